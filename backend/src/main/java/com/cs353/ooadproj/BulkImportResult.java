@@ -0,0 +1,36 @@
+package com.cs353.ooadproj;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of an NDJSON bulk import: how many rows were read and written, and why rows failed
+ * Only the first MAX_REPORTED_ERRORS failures are listed; failed always counts all of them
+ */
+@Data
+public class BulkImportResult {
+    public static final int MAX_REPORTED_ERRORS = 100;
+
+    private int received;
+    private int imported;
+    private int failed;
+    private List<RowError> errors = new ArrayList<>();
+
+    @Data
+    @AllArgsConstructor
+    public static class RowError {
+        // 1-based line of the input the row was read from
+        private int line;
+        private String message;
+    }
+
+    public void addError(int line, String message) {
+        failed++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new RowError(line, message));
+        }
+    }
+}
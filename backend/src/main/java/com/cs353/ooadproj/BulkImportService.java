@@ -0,0 +1,246 @@
+package com.cs353.ooadproj;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Imports products and orders from NDJSON, one JSON document per line
+ *
+ * Input is read as a stream and written in unordered bulk inserts of
+ * bulk-import.batch-size rows, so memory stays bounded by one batch however
+ * large the upload is. Rows that fail to parse, validate or insert are reported
+ * by line and do not stop the rest. Existing ids are never overwritten: a row
+ * reusing one fails with the duplicate key error. Embedded reviews of imported
+ * products are moved to the reviews collection, leaving the usual preview of
+ * the newest ones. The catalog and its indexes are rebuilt once after a product
+ * import rather than once per row.
+ */
+@Service
+@Slf4j
+public class BulkImportService {
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final ProductRepositoryProxy productRepo;
+    private final int batchSize;
+
+    public BulkImportService(MongoTemplate mongoTemplate, ObjectMapper objectMapper, ProductRepositoryProxy productRepo,
+                             @Value("${bulk-import.batch-size:500}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.productRepo = productRepo;
+        this.batchSize = Math.max(batchSize, 1);
+    }
+
+    public BulkImportResult importProducts(InputStream input) {
+        BulkImportResult result = new BulkImportResult();
+        // Full review lists of the current batch; the products themselves only embed the newest
+        Map<Product, List<Review>> reviewsByProduct = new IdentityHashMap<>();
+        try {
+            importRows(input, Product.class, product -> prepareProduct(product, reviewsByProduct), written -> {
+                // Only for products actually inserted, so a rejected duplicate id cannot add reviews to another product
+                BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Review.class);
+                boolean hasReviews = false;
+                for (Product product : written) {
+                    List<Review> reviews = reviewsByProduct.get(product);
+                    if (reviews != null && !reviews.isEmpty()) {
+                        ReviewUtils.moveToReviewsCollection(bulk, product.getId(), reviews);
+                        hasReviews = true;
+                    }
+                }
+                reviewsByProduct.clear();
+                if (hasReviews) {
+                    bulk.execute();
+                }
+            }, result);
+        } finally {
+            // Rows written before a failure are in the database too, so rebuild whenever anything was written
+            if (result.getImported() > 0) {
+                productRepo.reloadCatalog();
+            }
+        }
+        log.info("Imported {} of {} products, {} failed", result.getImported(), result.getReceived(), result.getFailed());
+        return result;
+    }
+
+    public BulkImportResult importOrders(InputStream input) {
+        BulkImportResult result = new BulkImportResult();
+        Map<String, Integer> quantitiesByProduct = new HashMap<>();
+        try {
+            importRows(input, Order.class, BulkImportService::prepareOrder, written -> {
+                for (Order order : written) {
+                    for (LineItem lineItem : order.getLineItems()) {
+                        if (lineItem.getProductId() != null) {
+                            quantitiesByProduct.merge(lineItem.getProductId(), lineItem.getQuantity(), Integer::sum);
+                        }
+                    }
+                }
+            }, result);
+        } finally {
+            // Imported orders count towards the best-seller rankings like placed ones, in one write;
+            // best effort, since the orders are already written
+            try {
+                productRepo.recordSales(quantitiesByProduct);
+            } catch (RuntimeException e) {
+                log.error("Updating sales counts for imported orders failed: {}", e.getMessage(), e);
+            }
+        }
+        log.info("Imported {} of {} orders, {} failed", result.getImported(), result.getReceived(), result.getFailed());
+        return result;
+    }
+
+    /**
+     * Read rows line by line, check each with the validator, which returns an error
+     * message or null, and insert the valid ones batch by batch
+     */
+    private <T> void importRows(InputStream input, Class<T> type, Function<T, String> validator,
+                                Consumer<List<T>> onWritten, BulkImportResult result) {
+        List<T> rows = new ArrayList<>(batchSize);
+        List<Integer> lines = new ArrayList<>(batchSize);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                result.setReceived(result.getReceived() + 1);
+
+                T row;
+                try {
+                    row = objectMapper.readValue(line, type);
+                } catch (JsonProcessingException e) {
+                    result.addError(lineNumber, "Invalid JSON: " + e.getOriginalMessage());
+                    continue;
+                }
+                String error = validator.apply(row);
+                if (error != null) {
+                    result.addError(lineNumber, error);
+                    continue;
+                }
+
+                rows.add(row);
+                lines.add(lineNumber);
+                if (rows.size() == batchSize) {
+                    write(type, rows, lines, onWritten, result);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        write(type, rows, lines, onWritten, result);
+    }
+
+    private <T> void write(Class<T> type, List<T> rows, List<Integer> lines, Consumer<List<T>> onWritten,
+                           BulkImportResult result) {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        Set<Integer> failedRows = new HashSet<>();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, type).insert(rows).execute();
+        } catch (BulkOperationException e) {
+            // Unordered, so every row without an error of its own was still written
+            for (BulkWriteError error : e.getErrors()) {
+                failedRows.add(error.getIndex());
+                result.addError(lines.get(error.getIndex()), error.getMessage());
+            }
+        }
+
+        List<T> written = new ArrayList<>(rows.size() - failedRows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            if (!failedRows.contains(i)) {
+                written.add(rows.get(i));
+            }
+        }
+        result.setImported(result.getImported() + written.size());
+        onWritten.accept(written);
+        rows.clear();
+        lines.clear();
+    }
+
+    private static String prepareProduct(Product product, Map<Product, List<Review>> reviewsByProduct) {
+        if (product.getTitle() == null || product.getTitle().isBlank()) {
+            return "title is required";
+        }
+        if (product.getPrice() == null || !(product.getPrice() >= 0) || product.getPrice().isInfinite()) {
+            return "price must be a non-negative number";
+        }
+
+        if (product.getId() == null) {
+            product.setId(new ObjectId().toHexString());
+        }
+        if (product.getReviews() == null) {
+            product.setReviews(new ArrayList<>());
+        }
+        // Denormalized here so listings and rating sorts see the product straight away
+        RatingSummary summary = RatingSummary.fromReviews(ReviewUtils.getReviewIterator(product));
+        product.setRatingSummary(summary);
+        product.setAverageRating(summary.getAverage());
+
+        // The full history goes to the reviews collection once the product is written;
+        // the embedded preview gets its ids from the same positions
+        List<Review> reviews = product.getReviews();
+        for (int i = 0; i < reviews.size(); i++) {
+            reviews.get(i).setId(product.getId() + ":" + i);
+            reviews.get(i).setProductId(product.getId());
+        }
+        reviewsByProduct.put(product, reviews);
+        product.setReviews(ReviewUtils.recentReviews(reviews));
+        return null;
+    }
+
+    private static String prepareOrder(Order order) {
+        if (order.getUserId() == null || order.getUserId().isBlank()) {
+            return "userId is required";
+        }
+        if (order.getLineItems() == null || order.getLineItems().isEmpty()) {
+            return "order must have at least one line item";
+        }
+
+        double totalCost = 0;
+        for (LineItem lineItem : order.getLineItems()) {
+            try {
+                totalCost += lineItem.cost();
+            } catch (IllegalArgumentException e) {
+                return e.getMessage();
+            }
+        }
+        if (order.getTotalCost() == 0) {
+            order.setTotalCost(totalCost);
+        }
+        if (order.getId() == null) {
+            order.setId(new ObjectId().toHexString());
+        }
+        if (order.getOrderDate() == null) {
+            order.setOrderDate(Instant.now());
+        }
+        return null;
+    }
+}
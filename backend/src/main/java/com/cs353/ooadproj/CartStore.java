@@ -0,0 +1,38 @@
+package com.cs353.ooadproj;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Where carts are read and changed
+ * Implemented directly on the database, or by an in-memory write-behind store
+ * when cart.write-behind.enabled is set
+ */
+public interface CartStore {
+
+    /**
+     * The user's cart, created empty if it does not exist yet
+     */
+    ShoppingCart findOrCreate(String userId);
+
+    /**
+     * The cart with the given id in its latest state, or null if there is none
+     */
+    ShoppingCart findById(String cartId);
+
+    /**
+     * Append line items and add their cost to the total, returning the updated cart
+     */
+    ShoppingCart addLineItems(String userId, List<LineItem> lineItems);
+
+    /**
+     * Remove the line items with the given ids and subtract their cost, returning the
+     * updated cart, or null if the user has no cart
+     */
+    ShoppingCart removeLineItems(String userId, Collection<String> lineItemIds);
+
+    /**
+     * Make sure the user's latest cart state has been written to the database
+     */
+    void flush(String userId);
+}
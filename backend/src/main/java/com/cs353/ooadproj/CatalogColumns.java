@@ -0,0 +1,191 @@
+package com.cs353.ooadproj;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-oriented copy of one catalog snapshot, for computing facet counts
+ *
+ * Each product is a row; prices, rounded ratings and tag ordinals live in
+ * primitive arrays so counting a result set is one pass over ints and doubles
+ * without touching Product objects or boxing anything.
+ */
+public final class CatalogColumns {
+    // Upper bounds of the price buckets, the last bucket is open-ended
+    private static final double[] PRICE_BOUNDS = {25, 50, 100, 250, 500, 1000};
+    private static final String[] PRICE_LABELS = {"0-25", "25-50", "50-100", "100-250", "250-500", "500-1000", "1000+"};
+    private static final int NO_PRICE = -1;
+
+    private final CatalogSnapshot snapshot;
+    private final Map<String, Integer> rowsById;
+    // Price bucket of each row, or NO_PRICE
+    private final byte[] priceBuckets;
+    private final double[] prices;
+    // Average rating of each row rounded to 0..5 stars
+    private final byte[] ratings;
+    // Tags of row r are tagOrdinals[tagOffsets[r] .. tagOffsets[r + 1])
+    private final int[] tagOffsets;
+    private final int[] tagOrdinals;
+    private final String[] tagNames;
+
+    private CatalogColumns(CatalogSnapshot snapshot) {
+        List<Product> products = snapshot.products();
+        int rows = products.size();
+        this.snapshot = snapshot;
+        this.rowsById = new HashMap<>(rows * 2);
+        this.prices = new double[rows];
+        this.priceBuckets = new byte[rows];
+        this.ratings = new byte[rows];
+        this.tagOffsets = new int[rows + 1];
+
+        Map<String, Integer> tagOrdinalsByName = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        int tagCount = 0;
+        for (Product product : products) {
+            tagCount += product.getTags() == null ? 0 : product.getTags().size();
+        }
+        int[] ordinals = new int[tagCount];
+
+        int next = 0;
+        for (int row = 0; row < rows; row++) {
+            Product product = products.get(row);
+            rowsById.put(product.getId(), row);
+            Double price = product.getPrice();
+            prices[row] = price == null ? Double.NaN : price;
+            priceBuckets[row] = price == null ? NO_PRICE : (byte) priceBucket(price);
+            ratings[row] = (byte) Math.max(0, Math.min(RatingSummary.MAX_RATING, Math.round(product.getAverageRating())));
+
+            tagOffsets[row] = next;
+            if (product.getTags() != null) {
+                int first = next;
+                for (String tag : product.getTags()) {
+                    String normalized = ProductCategoryIndex.normalize(tag);
+                    if (normalized.isEmpty()) {
+                        continue;
+                    }
+                    int ordinal = tagOrdinalsByName.computeIfAbsent(normalized, n -> {
+                        names.add(n);
+                        return names.size() - 1;
+                    });
+                    // A product listing the same tag twice still counts once
+                    boolean duplicate = false;
+                    for (int i = first; i < next && !duplicate; i++) {
+                        duplicate = ordinals[i] == ordinal;
+                    }
+                    if (!duplicate) {
+                        ordinals[next++] = ordinal;
+                    }
+                }
+            }
+        }
+        tagOffsets[rows] = next;
+        this.tagOrdinals = ordinals;
+        this.tagNames = names.toArray(new String[0]);
+    }
+
+    /**
+     * Build the columns of a snapshot
+     */
+    public static CatalogColumns of(CatalogSnapshot snapshot) {
+        return new CatalogColumns(snapshot);
+    }
+
+    public CatalogSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    private static int priceBucket(double price) {
+        int bucket = 0;
+        while (bucket < PRICE_BOUNDS.length && price >= PRICE_BOUNDS[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    /**
+     * Rows of the given products, skipping any this snapshot does not contain
+     */
+    public int[] rowsOf(Collection<Product> products) {
+        int[] rows = new int[products.size()];
+        int count = 0;
+        for (Product product : products) {
+            Integer row = rowsById.get(product.getId());
+            if (row != null) {
+                rows[count++] = row;
+            }
+        }
+        return count == rows.length ? rows : Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * Every row of the snapshot
+     */
+    public int[] allRows() {
+        int[] rows = new int[prices.length];
+        for (int row = 0; row < rows.length; row++) {
+            rows[row] = row;
+        }
+        return rows;
+    }
+
+    /**
+     * Tag, price bucket and rating counts of the given rows, computed in one pass
+     */
+    public ProductFacets facets(int[] rows) {
+        int[] tagCounts = new int[tagNames.length];
+        int[] priceCounts = new int[PRICE_LABELS.length];
+        int[] ratingCounts = new int[RatingSummary.MAX_RATING + 1];
+        double minPrice = Double.POSITIVE_INFINITY;
+        double maxPrice = Double.NEGATIVE_INFINITY;
+
+        for (int row : rows) {
+            int bucket = priceBuckets[row];
+            if (bucket != NO_PRICE) {
+                priceCounts[bucket]++;
+                minPrice = Math.min(minPrice, prices[row]);
+                maxPrice = Math.max(maxPrice, prices[row]);
+            }
+            ratingCounts[ratings[row]]++;
+            for (int i = tagOffsets[row], end = tagOffsets[row + 1]; i < end; i++) {
+                tagCounts[tagOrdinals[i]]++;
+            }
+        }
+
+        // Only the non-zero counts are boxed into the response, most frequent tags first
+        List<Integer> usedTags = new ArrayList<>();
+        for (int ordinal = 0; ordinal < tagCounts.length; ordinal++) {
+            if (tagCounts[ordinal] > 0) {
+                usedTags.add(ordinal);
+            }
+        }
+        usedTags.sort((t1, t2) -> tagCounts[t1] != tagCounts[t2]
+            ? Integer.compare(tagCounts[t2], tagCounts[t1])
+            : tagNames[t1].compareTo(tagNames[t2]));
+        Map<String, Integer> tags = new LinkedHashMap<>();
+        for (int ordinal : usedTags) {
+            tags.put(tagNames[ordinal], tagCounts[ordinal]);
+        }
+
+        Map<String, Integer> priceRanges = new LinkedHashMap<>();
+        for (int bucket = 0; bucket < priceCounts.length; bucket++) {
+            if (priceCounts[bucket] > 0) {
+                priceRanges.put(PRICE_LABELS[bucket], priceCounts[bucket]);
+            }
+        }
+
+        Map<Integer, Integer> ratingCountsByStars = new LinkedHashMap<>();
+        for (int stars = RatingSummary.MAX_RATING; stars >= 0; stars--) {
+            if (ratingCounts[stars] > 0) {
+                ratingCountsByStars.put(stars, ratingCounts[stars]);
+            }
+        }
+
+        return new ProductFacets(rows.length, tags, priceRanges, ratingCountsByStars,
+            minPrice > maxPrice ? null : minPrice, minPrice > maxPrice ? null : maxPrice);
+    }
+}
@@ -0,0 +1,25 @@
+package com.cs353.ooadproj;
+
+import java.util.List;
+
+/**
+ * Listener notified by ProductRepositoryProxy whenever the catalog changes
+ * Demonstrates the Observer pattern for keeping in-memory indexes in sync with writes
+ */
+public interface CatalogListener {
+
+    /**
+     * Called after the whole catalog has been (re)loaded from the database
+     */
+    void onCatalogLoaded(List<Product> products);
+
+    /**
+     * Called after a single product has been created or updated
+     */
+    void onProductSaved(Product product);
+
+    /**
+     * Called after a single product has been deleted
+     */
+    void onProductDeleted(String id);
+}
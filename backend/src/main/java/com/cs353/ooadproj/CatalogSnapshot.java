@@ -0,0 +1,217 @@
+package com.cs353.ooadproj;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Immutable, versioned view of the whole product catalog
+ *
+ * Products are kept in a persistent treap ordered by id. Replacing or removing
+ * one product copies only the O(log n) nodes on its search path and shares the
+ * rest with the previous snapshot, so writers can publish a new snapshot cheaply
+ * while readers keep using the old one without locks.
+ */
+public final class CatalogSnapshot {
+    private final Node root;
+    private final long version;
+    private final long loadedAt;
+    // Materialized lazily, at most once per snapshot
+    private volatile List<Product> products;
+
+    private static final class Node {
+        final String id;
+        final Product product;
+        // Catalog version at which this product was last written
+        final long version;
+        final int priority;
+        final Node left;
+        final Node right;
+        final int size;
+
+        Node(String id, Product product, long version, int priority, Node left, Node right) {
+            this.id = id;
+            this.product = product;
+            this.version = version;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + size(left) + size(right);
+        }
+
+        Node withChildren(Node left, Node right) {
+            return new Node(id, product, version, priority, left, right);
+        }
+    }
+
+    private CatalogSnapshot(Node root, long version, long loadedAt) {
+        this.root = root;
+        this.version = version;
+        this.loadedAt = loadedAt;
+    }
+
+    /**
+     * Build a snapshot from a freshly loaded catalog. Products equal to their copy
+     * in the previous snapshot keep the version they were last written at, so
+     * per-product versions only move when a product actually changed.
+     */
+    public static CatalogSnapshot of(List<Product> products, long version, CatalogSnapshot previous) {
+        Node root = null;
+        for (Product product : products) {
+            if (product.getId() != null) {
+                Node unchanged = previous == null ? null : previous.find(product.getId());
+                long productVersion = unchanged != null && unchanged.product.equals(product) ? unchanged.version : version;
+                root = put(root, product, productVersion);
+            }
+        }
+        return new CatalogSnapshot(root, version, System.currentTimeMillis());
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public boolean isOlderThan(long ageMs) {
+        return System.currentTimeMillis() - loadedAt > ageMs;
+    }
+
+    public Product get(String id) {
+        Node node = find(id);
+        return node == null ? null : node.product;
+    }
+
+    /**
+     * Catalog version at which the given product was last written, or -1 if it is absent
+     */
+    public long versionOf(String id) {
+        Node node = find(id);
+        return node == null ? -1 : node.version;
+    }
+
+    /**
+     * New snapshot with the product added or replaced
+     */
+    public CatalogSnapshot with(Product product) {
+        long nextVersion = version + 1;
+        return new CatalogSnapshot(put(root, product, nextVersion), nextVersion, loadedAt);
+    }
+
+    /**
+     * New snapshot without the given product
+     */
+    public CatalogSnapshot without(String id) {
+        if (find(id) == null) {
+            return this;
+        }
+        return new CatalogSnapshot(remove(root, id), version + 1, loadedAt);
+    }
+
+    /**
+     * All products ordered by id, as an unmodifiable list
+     */
+    public List<Product> products() {
+        List<Product> result = products;
+        if (result == null) {
+            result = new ArrayList<>(size());
+            Deque<Node> stack = new ArrayDeque<>();
+            Node node = root;
+            while (node != null || !stack.isEmpty()) {
+                while (node != null) {
+                    stack.push(node);
+                    node = node.left;
+                }
+                node = stack.pop();
+                result.add(node.product);
+                node = node.right;
+            }
+            result = Collections.unmodifiableList(result);
+            products = result;
+        }
+        return result;
+    }
+
+    private Node find(String id) {
+        Node node = root;
+        while (node != null) {
+            int cmp = id.compareTo(node.id);
+            if (cmp == 0) {
+                return node;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Priorities are derived from the id so the tree shape does not depend on insertion order
+     */
+    private static int priority(String id) {
+        int h = id.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static Node put(Node node, Product product, long version) {
+        String id = product.getId();
+        if (node == null) {
+            return new Node(id, product, version, priority(id), null, null);
+        }
+
+        int cmp = id.compareTo(node.id);
+        if (cmp == 0) {
+            return new Node(id, product, version, node.priority, node.left, node.right);
+        }
+        if (cmp < 0) {
+            Node left = put(node.left, product, version);
+            if (left.priority > node.priority) {
+                // Rotate right to restore the heap order
+                return left.withChildren(left.left, node.withChildren(left.right, node.right));
+            }
+            return node.withChildren(left, node.right);
+        }
+
+        Node right = put(node.right, product, version);
+        if (right.priority > node.priority) {
+            // Rotate left to restore the heap order
+            return right.withChildren(node.withChildren(node.left, right.left), right.right);
+        }
+        return node.withChildren(node.left, right);
+    }
+
+    private static Node remove(Node node, String id) {
+        int cmp = id.compareTo(node.id);
+        if (cmp == 0) {
+            return merge(node.left, node.right);
+        }
+        if (cmp < 0) {
+            return node.withChildren(remove(node.left, id), node.right);
+        }
+        return node.withChildren(node.left, remove(node.right, id));
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            return left.withChildren(left.left, merge(left.right, right));
+        }
+        return right.withChildren(merge(left, right.left), right.right);
+    }
+}
@@ -0,0 +1,194 @@
+package com.cs353.ooadproj;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Startup backfills that bring documents written by older versions up to the current schema
+ * Every migration only touches documents that still need it, so running them on each start is cheap
+ */
+@Component
+@Slf4j
+public class DataMigrations implements ApplicationRunner {
+    private static final int MIGRATION_BATCH_SIZE = 500;
+    private final MongoTemplate mongoTemplate;
+
+    public DataMigrations(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            backfillRatingSummary();
+            migrateEmbeddedReviews();
+            migrateLineItemSnapshots(mongoTemplate.getCollectionName(ShoppingCart.class));
+            migrateLineItemSnapshots(mongoTemplate.getCollectionName(Order.class));
+            migrateOrderDates();
+        } catch (Exception e) {
+            // A failed backfill must not keep the shop from starting; it is retried on the next start
+            log.error("Data migration failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Compute the rating summary and average rating for products created before
+     * they were denormalized or saved without one, so listings and rating sorts
+     * see every product and reviews can increment the histogram in place
+     */
+    void backfillRatingSummary() {
+        List<Product> products = mongoTemplate.find(
+            Query.query(Criteria.where("ratingSummary.histogram").not().type(JsonSchemaObject.Type.ARRAY)), Product.class);
+        if (products.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        for (Product product : products) {
+            RatingSummary summary = RatingSummary.fromReviews(ReviewUtils.getReviewIterator(product));
+            // Skip products a review has initialized since they were read
+            bulk.updateOne(Query.query(Criteria.where("id").is(product.getId())
+                    .and("ratingSummary.histogram").not().type(JsonSchemaObject.Type.ARRAY)),
+                Update.update("ratingSummary", summary).set("averageRating", summary.getAverage()));
+        }
+        bulk.execute();
+        log.info("Backfilled rating summary for {} products", products.size());
+    }
+
+    /**
+     * Move the full embedded review history of older products into the reviews
+     * collection and keep only the newest reviews embedded. Migrated reviews get
+     * ids derived from their position, so an interrupted migration can run again.
+     * These are the largest documents there are, so ids are read in batches and
+     * the products themselves one at a time.
+     */
+    void migrateEmbeddedReviews() {
+        // Reviews written since the move carry a productId, legacy embedded ones do not, so
+        // every migrated product drops out of the query
+        Query legacy = Query.query(Criteria.where("reviews.0").exists(true).and("reviews.productId").exists(false))
+            .limit(MIGRATION_BATCH_SIZE);
+        legacy.fields().include("id");
+        int migrated = 0;
+        List<Product> batch;
+        while (!(batch = mongoTemplate.find(legacy, Product.class)).isEmpty()) {
+            for (Product legacyProduct : batch) {
+                Product product = mongoTemplate.findById(legacyProduct.getId(), Product.class);
+                if (product == null || product.getReviews() == null) {
+                    continue;
+                }
+                BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Review.class);
+                ReviewUtils.moveToReviewsCollection(bulk, product.getId(), product.getReviews());
+                bulk.execute();
+
+                mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(product.getId())),
+                    Update.update("reviews", ReviewUtils.recentReviews(product.getReviews())), Product.class);
+            }
+            migrated += batch.size();
+        }
+        if (migrated > 0) {
+            log.info("Moved embedded reviews of {} products into the reviews collection", migrated);
+        }
+    }
+
+    /**
+     * Replace the full products embedded in older line items with a product id and a
+     * title, price and thumbnail snapshot. Works on raw documents, since the current
+     * LineItem no longer maps the embedded product, and in batches so large
+     * collections are not read into memory at once.
+     */
+    void migrateLineItemSnapshots(String collectionName) {
+        Query legacy = Query.query(Criteria.where("lineItems.product").exists(true)).limit(MIGRATION_BATCH_SIZE);
+        int migrated = 0;
+        List<Document> batch;
+        while (!(batch = mongoTemplate.find(legacy, Document.class, collectionName)).isEmpty()) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collectionName);
+            for (Document document : batch) {
+                List<Document> lineItems = new ArrayList<>();
+                for (Document lineItem : document.getList("lineItems", Document.class)) {
+                    lineItems.add(toSnapshot(lineItem));
+                }
+                bulk.updateOne(Query.query(Criteria.where("_id").is(document.get("_id"))),
+                    Update.update("lineItems", lineItems));
+            }
+            bulk.execute();
+            migrated += batch.size();
+        }
+        if (migrated > 0) {
+            log.info("Replaced embedded products in line items of {} {} documents", migrated, collectionName);
+        }
+    }
+
+    /**
+     * Convert order dates stored as LocalDateTime strings into BSON dates, so history
+     * can be range-queried and sorted on the (userId, orderDate) index. Strings were
+     * written in the server's time zone; unparseable ones fall back to the time the
+     * order id was generated.
+     */
+    void migrateOrderDates() {
+        String collectionName = mongoTemplate.getCollectionName(Order.class);
+        Query legacy = Query.query(Criteria.where("orderDate").type(JsonSchemaObject.Type.STRING))
+            .limit(MIGRATION_BATCH_SIZE);
+        int migrated = 0;
+        List<Document> batch;
+        while (!(batch = mongoTemplate.find(legacy, Document.class, collectionName)).isEmpty()) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collectionName);
+            for (Document document : batch) {
+                Object id = document.get("_id");
+                Date orderDate = parseOrderDate(document.getString("orderDate"), id);
+                Update update = orderDate == null ? new Update().unset("orderDate") : Update.update("orderDate", orderDate);
+                bulk.updateOne(Query.query(Criteria.where("_id").is(id)), update);
+            }
+            bulk.execute();
+            migrated += batch.size();
+        }
+        if (migrated > 0) {
+            log.info("Converted order dates of {} orders to timestamps", migrated);
+        }
+    }
+
+    private static Date parseOrderDate(String value, Object id) {
+        try {
+            return Date.from(LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant());
+        } catch (DateTimeParseException e) {
+            try {
+                return Date.from(Instant.parse(value));
+            } catch (DateTimeParseException ignored) {
+                return id instanceof ObjectId ? ((ObjectId) id).getDate() : null;
+            }
+        }
+    }
+
+    private static Document toSnapshot(Document lineItem) {
+        Object embedded = lineItem.remove("product");
+        if (!(embedded instanceof Document)) {
+            return lineItem;
+        }
+
+        Document product = (Document) embedded;
+        Object productId = product.containsKey("_id") ? product.get("_id") : product.get("id");
+        List<?> images = product.getList("images", Object.class);
+        lineItem.put("productId", productId == null ? null : productId.toString());
+        lineItem.put("title", product.get("title"));
+        lineItem.put("unitPrice", product.get("price"));
+        lineItem.put("thumbnail", images == null || images.isEmpty() ? null : images.get(0));
+        return lineItem;
+    }
+}
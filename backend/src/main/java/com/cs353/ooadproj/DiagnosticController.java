@@ -19,10 +19,48 @@ import java.util.Map;
 public class DiagnosticController {
 
     private final ShoppingCartRepo shoppingCartRepo;
+    private final ProductRepositoryProxy productRepo;
+    private final ResponseBodyCache responseCache;
+    private final OrderCommandInvoker commandInvoker;
+    private final OrderRequestQueue orderQueue;
     
     @Autowired
-    public DiagnosticController(ShoppingCartRepo shoppingCartRepo) {
+    public DiagnosticController(ShoppingCartRepo shoppingCartRepo, ProductRepositoryProxy productRepo,
+                                ResponseBodyCache responseCache, OrderCommandInvoker commandInvoker,
+                                OrderRequestQueue orderQueue) {
         this.shoppingCartRepo = shoppingCartRepo;
+        this.productRepo = productRepo;
+        this.responseCache = responseCache;
+        this.commandInvoker = commandInvoker;
+        this.orderQueue = orderQueue;
+    }
+    
+    @CrossOrigin()
+    @GetMapping("/diagnostic/cache")
+    public Map<String, Object> cacheStats() {
+        log.info("Diagnostic: Reporting product cache statistics");
+        return productRepo.cacheStats();
+    }
+    
+    @CrossOrigin()
+    @GetMapping("/diagnostic/response-cache")
+    public Map<String, Object> responseCacheStats() {
+        log.info("Diagnostic: Reporting response body cache statistics");
+        return responseCache.stats();
+    }
+    
+    @CrossOrigin()
+    @GetMapping("/diagnostic/order-history")
+    public Map<String, Object> orderHistoryStats() {
+        log.info("Diagnostic: Reporting order command history statistics");
+        return commandInvoker.stats();
+    }
+    
+    @CrossOrigin()
+    @GetMapping("/diagnostic/order-queue")
+    public Map<String, Object> orderQueueStats() {
+        log.info("Diagnostic: Reporting asynchronous order queue statistics");
+        return orderQueue.stats();
     }
     
     @CrossOrigin()
@@ -1,11 +1,18 @@
 package com.cs353.ooadproj;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 
-import javax.persistence.Entity;
-import javax.persistence.GeneratedValue;
+import java.util.List;
+
+/**
+ * A product and quantity in a cart or order
+ * Carries a reference and a snapshot of what the shopper saw, not the whole product;
+ * anything else is resolved from the product cache when needed
+ */
 @Data
 public class LineItem {
 //    @Id
@@ -15,6 +22,40 @@ public class LineItem {
     private ObjectId _id = new ObjectId();
     private String trueId = _id.toHexString();
     private int quantity;
+    private String productId;
+    private String title;
+    // Price when the item was added, which is what the cart total and order were charged
+    private Double unitPrice;
+    private String thumbnail;
+    // Older clients post the whole product; it is only read from to take the snapshot and never stored
+    @Transient
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     private Product product;
 
+    /**
+     * A line item for the given quantity of a product, snapshotting its title, price and first image
+     */
+    public static LineItem of(Product product, int quantity) {
+        LineItem lineItem = new LineItem();
+        lineItem.setQuantity(quantity);
+        lineItem.setProductId(product.getId());
+        lineItem.setTitle(product.getTitle());
+        lineItem.setUnitPrice(product.getPrice());
+        List<String> images = product.getImages();
+        lineItem.setThumbnail(images == null || images.isEmpty() ? null : images.get(0));
+        return lineItem;
+    }
+
+    /**
+     * Quantity times unit price, rejecting items that cannot be charged
+     */
+    public double cost() {
+        if (unitPrice == null) {
+            throw new IllegalArgumentException("Line item must have a unit price");
+        }
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+        return quantity * unitPrice;
+    }
 }
@@ -0,0 +1,45 @@
+package com.cs353.ooadproj;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Default cart store: every change is one atomic update in the database
+ */
+@Component
+@ConditionalOnProperty(name = "cart.write-behind.enabled", havingValue = "false", matchIfMissing = true)
+public class MongoCartStore implements CartStore {
+    private final ShoppingCartRepo shoppingCartRepo;
+
+    public MongoCartStore(ShoppingCartRepo shoppingCartRepo) {
+        this.shoppingCartRepo = shoppingCartRepo;
+    }
+
+    @Override
+    public ShoppingCart findOrCreate(String userId) {
+        return shoppingCartRepo.findOrCreateByUserId(userId);
+    }
+
+    @Override
+    public ShoppingCart findById(String cartId) {
+        return shoppingCartRepo.findById(cartId).orElse(null);
+    }
+
+    @Override
+    public ShoppingCart addLineItems(String userId, List<LineItem> lineItems) {
+        return shoppingCartRepo.addLineItems(userId, lineItems);
+    }
+
+    @Override
+    public ShoppingCart removeLineItems(String userId, Collection<String> lineItemIds) {
+        return shoppingCartRepo.removeLineItems(userId, lineItemIds);
+    }
+
+    @Override
+    public void flush(String userId) {
+        // Every change is already written
+    }
+}
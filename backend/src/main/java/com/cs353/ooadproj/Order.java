@@ -1,13 +1,17 @@
 package com.cs353.ooadproj;
 
+import java.time.Instant;
 import java.util.List;
 
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Data
 @Document
+// Serves a user's history newest first; the id breaks ties between orders placed in the same millisecond
+@CompoundIndex(name = "userId_orderDate", def = "{'userId': 1, 'orderDate': -1, '_id': -1}")
 public class Order {
     @Id
     private String id;
@@ -16,7 +20,7 @@ public class Order {
     private double totalCost;
     private String address;
     private String deliveryDate;
-    private String orderDate;
+    private Instant orderDate;
     
     // Explicit setters to ensure they're available
     public void setId(String id) {
@@ -43,7 +47,7 @@ public class Order {
         this.deliveryDate = deliveryDate;
     }
     
-    public void setOrderDate(String orderDate) {
+    public void setOrderDate(Instant orderDate) {
         this.orderDate = orderDate;
     }
 }
@@ -7,4 +7,14 @@ package com.cs353.ooadproj;
 public interface OrderCommand {
     void execute();
     void undo();
+
+    /**
+     * The user the command acted for, known once it has executed
+     */
+    String getUserId();
+
+    /**
+     * Rough heap footprint of the state the command keeps for undo
+     */
+    long estimateRetainedBytes();
 }
@@ -1,49 +1,170 @@
 package com.cs353.ooadproj;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Invoker for order commands with history tracking
  * Part of the Command pattern implementation that maintains command history
+ *
+ * History is kept per user, so an undo only ever reverts the caller's own
+ * commands. Each user keeps at most orders.history.max-per-user commands for
+ * at most orders.history.ttl-minutes; older ones can no longer be undone and
+ * are dropped along with the carts and orders they hold on to.
  */
 @Service
 @Slf4j
 public class OrderCommandInvoker {
-    private final Deque<OrderCommand> history = new ArrayDeque<>();
-    
+    // User id -> that user's commands, newest first; a deque is only touched inside compute for its key
+    private final Map<String, Deque<HistoryEntry>> histories = new ConcurrentHashMap<>();
+    private final int maxPerUser;
+    private final long ttlMs;
+    private final AtomicLong retainedCommands = new AtomicLong();
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private volatile long nextSweep;
+
+    private static final class HistoryEntry {
+        final OrderCommand command;
+        final long executedAt;
+        final long bytes;
+
+        HistoryEntry(OrderCommand command, long executedAt) {
+            this.command = command;
+            this.executedAt = executedAt;
+            this.bytes = command.estimateRetainedBytes();
+        }
+    }
+
+    public OrderCommandInvoker(@Value("${orders.history.max-per-user:10}") int maxPerUser,
+                               @Value("${orders.history.ttl-minutes:60}") long ttlMinutes) {
+        this.maxPerUser = Math.max(maxPerUser, 0);
+        this.ttlMs = TimeUnit.MINUTES.toMillis(ttlMinutes);
+    }
+
     /**
-     * Execute a command and store it in history
+     * Execute a command and store it in its user's history
      */
     public void executeCommand(OrderCommand command) {
         if (command == null) {
             log.error("Cannot execute null command");
             throw new IllegalArgumentException("Command cannot be null");
         }
-        
+
         log.info("Executing order command of type: {}", command.getClass().getSimpleName());
         try {
             command.execute();
-            history.push(command);
+            record(command);
             log.info("Command executed successfully");
         } catch (Exception e) {
             log.error("Error executing command: {}", e.getMessage(), e);
             throw e; // Re-throw to allow controllers to handle
         }
     }
-    
+
+    /**
+     * Undo the last command executed for the given user, if it has not expired.
+     * Returns whether there was one to undo.
+     */
+    public boolean undoLastCommand(String userId) {
+        if (userId == null) {
+            throw new IllegalArgumentException("User ID cannot be null");
+        }
+
+        HistoryEntry[] taken = new HistoryEntry[1];
+        histories.computeIfPresent(userId, (id, history) -> {
+            removeExpired(history, System.currentTimeMillis());
+            taken[0] = history.poll();
+            if (taken[0] != null) {
+                release(taken[0]);
+            }
+            return history.isEmpty() ? null : history;
+        });
+
+        if (taken[0] == null) {
+            log.warn("No commands to undo for user #{}", userId);
+            return false;
+        }
+        log.info("Undoing command for user #{}", userId);
+        taken[0].command.undo();
+        return true;
+    }
+
     /**
-     * Undo the last executed command
+     * Number of users with history, commands retained and their estimated size
      */
-    public void undoLastCommand() {
-        if (!history.isEmpty()) {
-            OrderCommand command = history.pop();
-            log.info("Undoing command");
-            command.undo();
-        } else {
-            log.warn("No commands to undo");
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("users", histories.size());
+        stats.put("retainedCommands", retainedCommands.get());
+        stats.put("retainedBytes", retainedBytes.get());
+        stats.put("maxPerUser", maxPerUser);
+        stats.put("ttlMinutes", TimeUnit.MILLISECONDS.toMinutes(ttlMs));
+        return stats;
+    }
+
+    private void record(OrderCommand command) {
+        String userId = command.getUserId();
+        if (userId == null || maxPerUser == 0) {
+            return;
         }
+
+        long now = System.currentTimeMillis();
+        HistoryEntry entry = new HistoryEntry(command, now);
+        histories.compute(userId, (id, history) -> {
+            if (history == null) {
+                history = new ArrayDeque<>();
+            }
+            history.push(entry);
+            retainedCommands.incrementAndGet();
+            retainedBytes.addAndGet(entry.bytes);
+            while (history.size() > maxPerUser) {
+                release(history.removeLast());
+            }
+            removeExpired(history, now);
+            return history;
+        });
+        removeExpiredHistories(now);
+    }
+
+    private void removeExpiredHistories(long now) {
+        // Users who stopped ordering are not touched again, so sweep them at most once a minute
+        if (now < nextSweep) {
+            return;
+        }
+        nextSweep = now + TimeUnit.MINUTES.toMillis(1);
+        for (String userId : histories.keySet()) {
+            histories.computeIfPresent(userId, (id, history) -> {
+                removeExpired(history, now);
+                return history.isEmpty() ? null : history;
+            });
+        }
+    }
+
+    private void removeExpired(Deque<HistoryEntry> history, long now) {
+        // Newest first, so expired entries are all at the tail
+        Iterator<HistoryEntry> oldestFirst = history.descendingIterator();
+        while (oldestFirst.hasNext()) {
+            HistoryEntry entry = oldestFirst.next();
+            if (now - entry.executedAt <= ttlMs) {
+                break;
+            }
+            oldestFirst.remove();
+            release(entry);
+        }
+    }
+
+    private void release(HistoryEntry entry) {
+        retainedCommands.decrementAndGet();
+        retainedBytes.addAndGet(-entry.bytes);
     }
 }
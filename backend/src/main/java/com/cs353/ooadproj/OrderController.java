@@ -3,9 +3,12 @@ package com.cs353.ooadproj;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.InputStream;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -13,31 +16,65 @@ import java.util.List;
 @RestController
 public class OrderController {
     private final OrdersRepo ordersRepo;
-    private final ShoppingCartRepo shoppingCartRepo;
+    private final CartStore cartStore;
     private final OrderCommandInvoker commandInvoker;
     private final UsersRepo usersRepo;
     private final ProductsRepository productsRepository;
+    private final ProductRepositoryProxy productRepo;
+    private final OrderRequestQueue orderQueue;
+    private final OrderIdempotencyStore idempotencyStore;
+    private final AuthorizationService authorizationService;
+    private final BulkImportService bulkImportService;
+
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+    private static final int MAX_HISTORY_PAGE_SIZE = 50;
 
     @Autowired
-    public OrderController(OrdersRepo ordersRepo, ShoppingCartRepo shoppingCartRepo, OrderCommandInvoker commandInvoker, UsersRepo usersRepo, ProductsRepository productsRepository) {
+    public OrderController(OrdersRepo ordersRepo, CartStore cartStore, OrderCommandInvoker commandInvoker, UsersRepo usersRepo, ProductsRepository productsRepository, ProductRepositoryProxy productRepo, OrderRequestQueue orderQueue, OrderIdempotencyStore idempotencyStore, AuthorizationService authorizationService, BulkImportService bulkImportService) {
         this.ordersRepo = ordersRepo;
-        this.shoppingCartRepo = shoppingCartRepo;
+        this.cartStore = cartStore;
         this.commandInvoker = commandInvoker;
         this.usersRepo = usersRepo;
         this.productsRepository = productsRepository;
+        this.productRepo = productRepo;
+        this.orderQueue = orderQueue;
+        this.idempotencyStore = idempotencyStore;
+        this.authorizationService = authorizationService;
+        this.bulkImportService = bulkImportService;
     }
 
     @CrossOrigin()
     @GetMapping("/orders/{id}")
     List<Order> all(@PathVariable String id) {
         log.info("Getting order for user {}", id);
-        List<Order> orders = new ArrayList<>();
-        if (ordersRepo.findByUserId(id) != null) {
-            orders = ordersRepo.findByUserId(id);
-            return orders;
-        } else {
-            return orders;
+        return ordersRepo.findByUserIdOrderByOrderDateDesc(id);
+    }
+
+    @CrossOrigin()
+    @GetMapping("/orders/{userId}/history")
+    public OrderPage getOrderHistory(@PathVariable String userId,
+                                     @RequestParam(value = "limit", defaultValue = "10") int limit,
+                                     @RequestParam(value = "cursor", required = false) String cursor,
+                                     @RequestParam(value = "from", required = false) Instant from,
+                                     @RequestParam(value = "to", required = false) Instant to) {
+        log.info("Getting order history page for user {} (limit {}, from {} to {})", userId, limit, from, to);
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must not be after to");
         }
+        OrderCursor after;
+        try {
+            after = cursor == null || cursor.isEmpty() ? null : OrderCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+
+        // Fetch one extra row to find out whether another page exists
+        int pageSize = Math.max(1, Math.min(limit, MAX_HISTORY_PAGE_SIZE));
+        List<Order> rows = ordersRepo.findHistory(userId, from, to, after, pageSize + 1);
+        boolean hasMore = rows.size() > pageSize;
+        List<Order> items = hasMore ? new ArrayList<>(rows.subList(0, pageSize)) : rows;
+        String nextCursor = hasMore ? OrderCursor.after(items.get(items.size() - 1)).encode() : null;
+        return new OrderPage(items, nextCursor);
     }
 
     @CrossOrigin()
@@ -51,39 +88,106 @@ public class OrderController {
 
     @CrossOrigin()
     @PostMapping("/orders/{cartId}")
-    public Order placeOrder(@PathVariable String cartId, @RequestBody NewOrderReq orderReq) {
+    public ResponseEntity<?> placeOrder(@PathVariable String cartId, @RequestBody NewOrderReq orderReq,
+                                        @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         log.info("Placing order for cart: {}", cartId);
+        if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Idempotency-Key must be 1 to " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+        }
+        // Scoped to the cart, so the same key sent for another cart cannot return someone else's order
+        String dedupeKey = idempotencyKey == null ? null : cartId + ":" + idempotencyKey;
 
-        try {
-            // Using command pattern
-            PlaceOrderCommand command = new PlaceOrderCommand(
-                cartId,
-                orderReq.getAddress(),
-                orderReq.getDeliveryDate(),
-                ordersRepo,
-                shoppingCartRepo
-            );
-
-            commandInvoker.executeCommand(command);
-            Order result = command.getSavedOrder();
-            
-            if (result == null) {
-                throw new RuntimeException("Order creation failed - order is null");
+        // Using command pattern
+        PlaceOrderCommand command = new PlaceOrderCommand(
+            cartId,
+            orderReq.getAddress(),
+            orderReq.getDeliveryDate(),
+            ordersRepo,
+            cartStore,
+            productRepo
+        );
+
+        if (orderQueue.isEnabled()) {
+            OrderRequestStatus status = orderQueue.submit(cartId, command, dedupeKey);
+            if (status == null) {
+                log.warn("Order queue full, rejecting order for cart: {}", cartId);
+                throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many orders in progress, try again shortly");
             }
-            
-            return result;
+            return ResponseEntity.accepted()
+                .header("Location", "/orders/requests/" + status.getRequestId())
+                .body(status);
+        }
+
+        try {
+            Order result = dedupeKey == null
+                ? place(command)
+                : idempotencyStore.placeOnce(dedupeKey, () -> place(command));
+            return ResponseEntity.ok(result);
+        } catch (ResponseStatusException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error placing order: {}", e.getMessage(), e);
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to place order: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Import orders, e.g. replayed from another system, from an NDJSON body, one order per line
+     */
+    @CrossOrigin()
+    @PostMapping("/orders/bulk")
+    public BulkImportResult importOrders(InputStream body, @RequestParam("userId") String userId) {
+        log.info("Bulk importing orders by {}", userId);
+        if (!authorizationService.isAdmin(userId)) {
+            log.warn("User #{} attempted to import orders without authorization", userId);
+            throw new IllegalArgumentException("Unauthorized!");
+        }
+        return bulkImportService.importOrders(body);
+    }
+
+    private Order place(PlaceOrderCommand command) {
+        commandInvoker.executeCommand(command);
+        Order result = command.getSavedOrder();
+        
+        if (result == null) {
+            throw new RuntimeException("Order creation failed - order is null");
+        }
+        return result;
+    }
+
+    @CrossOrigin()
+    @GetMapping("/orders/requests/{requestId}")
+    public OrderRequestStatus getOrderRequestStatus(@PathVariable String requestId) {
+        OrderRequestStatus status = orderQueue.getStatus(requestId);
+        if (status == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Order request not found with ID: " + requestId);
+        }
+        return status;
+    }
+
+    /**
+     * Undo the caller's most recent order, as long as it is still in their command history
+     */
+    @CrossOrigin()
+    @PostMapping("/orders/undo")
+    public List<Order> undoLastOrder(@RequestParam("userId") String userId) {
+        log.info("Undoing last order of user {}", userId);
+        if (!usersRepo.existsById(userId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found with ID: " + userId);
+        }
+        // The history is per user, so this can only ever revert the caller's own order
+        if (!commandInvoker.undoLastCommand(userId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No recent order to undo");
+        }
+        return ordersRepo.findByUserIdOrderByOrderDateDesc(userId);
+    }
+
     @CrossOrigin()
     @DeleteMapping("/orders/{orderId}")
     public List<Order> deleteOrder(@PathVariable String orderId) {
         log.info("Deleting order with id {}", orderId);
         Order order = ordersRepo.findById(orderId).get();
         ordersRepo.deleteById(orderId);
-        return ordersRepo.findByUserId(order.getUserId());
+        return ordersRepo.findByUserIdOrderByOrderDateDesc(order.getUserId());
     }
 }
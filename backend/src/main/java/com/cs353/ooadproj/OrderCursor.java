@@ -0,0 +1,49 @@
+package com.cs353.ooadproj;
+
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Opaque keyset cursor pointing just after the last order of a history page
+ * Encodes the last order date and id, since history is ordered by (orderDate, id) descending
+ */
+@Getter
+public class OrderCursor {
+    private static final String SEPARATOR = "\n";
+
+    private final Instant lastOrderDate;
+    private final String lastId;
+
+    public OrderCursor(Instant lastOrderDate, String lastId) {
+        this.lastOrderDate = lastOrderDate;
+        this.lastId = lastId;
+    }
+
+    /**
+     * Build the cursor that continues after the given order
+     */
+    public static OrderCursor after(Order order) {
+        return new OrderCursor(order.getOrderDate(), order.getId());
+    }
+
+    public String encode() {
+        String raw = lastOrderDate.toEpochMilli() + SEPARATOR + lastId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a cursor issued by {@link #encode()}, rejecting anything malformed
+     */
+    public static OrderCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(SEPARATOR, 2);
+            return new OrderCursor(Instant.ofEpochMilli(Long.parseLong(parts[0])), parts[1]);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.cs353.ooadproj;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Claim on an Idempotency-Key, shared by every instance through its unique _id
+ * orderId is null while the claiming request is still placing the order. Expired
+ * by a TTL index on createdAt, created by OrderIdempotencyStore
+ */
+@Data
+@Document("orderIdempotencyKeys")
+public class OrderIdempotencyRecord {
+    @Id
+    private String key;
+    private String orderId;
+    // Identifies the claim, so only the request holding it can complete or release it
+    private String claimToken;
+    private Date createdAt;
+}
@@ -0,0 +1,231 @@
+package com.cs353.ooadproj;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the order placed under each Idempotency-Key for a limited window
+ *
+ * The first request with a key places the order; retries within the window
+ * get that same order back without placing another, and duplicates arriving
+ * while it is still being placed wait for it instead of racing it. A failed
+ * placement is forgotten so the client can retry it.
+ *
+ * With orders.idempotency.persist the key is claimed in Mongo before the order
+ * is placed, by inserting a record under the key as its _id, so only one
+ * instance can win it; the others poll the record until it carries the order id.
+ * A claim left pending for orders.idempotency.claim-timeout-seconds is taken to
+ * be abandoned by a crashed instance and may be taken over. Records expire with
+ * a TTL index. Without persistence, keys are only deduplicated per instance.
+ */
+@Component
+@Slf4j
+public class OrderIdempotencyStore {
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final MongoTemplate mongoTemplate;
+    private final OrdersRepo ordersRepo;
+    private final long windowMs;
+    private final long claimTimeoutMs;
+    private final boolean persist;
+    private volatile long nextSweep;
+
+    private static final class Entry {
+        final CompletableFuture<Order> order = new CompletableFuture<>();
+        final long createdAt;
+
+        Entry(long createdAt) {
+            this.createdAt = createdAt;
+        }
+    }
+
+    public OrderIdempotencyStore(MongoTemplate mongoTemplate, OrdersRepo ordersRepo,
+                                 @Value("${orders.idempotency.window-minutes:1440}") long windowMinutes,
+                                 @Value("${orders.idempotency.claim-timeout-seconds:30}") long claimTimeoutSeconds,
+                                 @Value("${orders.idempotency.persist:false}") boolean persist) {
+        this.mongoTemplate = mongoTemplate;
+        this.ordersRepo = ordersRepo;
+        this.windowMs = TimeUnit.MINUTES.toMillis(windowMinutes);
+        this.claimTimeoutMs = TimeUnit.SECONDS.toMillis(claimTimeoutSeconds);
+        this.persist = persist;
+
+        if (persist) {
+            // Created here rather than with @Indexed so the expiry follows the configured window
+            mongoTemplate.indexOps(OrderIdempotencyRecord.class).ensureIndex(
+                new Index().on("createdAt", Sort.Direction.ASC).expire(windowMinutes, TimeUnit.MINUTES));
+        }
+    }
+
+    /**
+     * The order placed under the key, running the placement only if there is none yet
+     */
+    public Order placeOnce(String key, Supplier<Order> placement) {
+        long now = System.currentTimeMillis();
+        removeExpired(now);
+
+        Entry entry = new Entry(now);
+        while (true) {
+            Entry existing = entries.putIfAbsent(key, entry);
+            if (existing == null) {
+                break;
+            }
+            if (now - existing.createdAt <= windowMs) {
+                log.info("Order for idempotency key {} already placed or in progress", key);
+                return await(existing);
+            }
+            entries.remove(key, existing);
+        }
+
+        try {
+            Order order = persist ? placeClaimed(key, placement) : placement.get();
+            entry.order.complete(order);
+            return order;
+        } catch (RuntimeException e) {
+            // Not remembered, so the client can try again with the same key
+            entries.remove(key, entry);
+            entry.order.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private Order await(Entry entry) {
+        try {
+            return entry.order.join();
+        } catch (CompletionException e) {
+            // Duplicates of a failed placement fail the same way
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Place the order only if this request wins the key in Mongo, otherwise wait
+     * for the order of the request that did
+     */
+    private Order placeClaimed(String key, Supplier<Order> placement) {
+        long waitUntil = System.currentTimeMillis() + claimTimeoutMs;
+        while (true) {
+            String claimToken = claim(key);
+            if (claimToken != null) {
+                Order order;
+                try {
+                    order = placement.get();
+                } catch (RuntimeException e) {
+                    release(key, claimToken);
+                    throw e;
+                }
+                complete(key, claimToken, order);
+                return order;
+            }
+
+            OrderIdempotencyRecord record = mongoTemplate.findById(key, OrderIdempotencyRecord.class);
+            if (record != null && record.getOrderId() != null) {
+                log.info("Order for idempotency key {} was placed by another request", key);
+                return ordersRepo.findById(record.getOrderId()).orElseThrow(() -> new ResponseStatusException(
+                    HttpStatus.CONFLICT, "The order placed with this Idempotency-Key has since been removed"));
+            }
+            if (System.currentTimeMillis() > waitUntil) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "An order with this Idempotency-Key is still being placed, try again shortly");
+            }
+            // Pending elsewhere, or released after a failure and free to claim on the next round
+            sleep();
+        }
+    }
+
+    /**
+     * Claim the key, returning the claim token, or null if another request holds it
+     */
+    private String claim(String key) {
+        long now = System.currentTimeMillis();
+        String claimToken = new ObjectId().toHexString();
+        OrderIdempotencyRecord record = new OrderIdempotencyRecord();
+        record.setKey(key);
+        record.setClaimToken(claimToken);
+        record.setCreatedAt(new Date(now));
+        try {
+            mongoTemplate.insert(record);
+            return claimToken;
+        } catch (DuplicateKeyException e) {
+            // Held by someone, unless it is past the window (the TTL monitor only runs
+            // once a minute) or a pending claim its holder has abandoned
+            Query stale = Query.query(Criteria.where("key").is(key).orOperator(
+                Criteria.where("createdAt").lt(new Date(now - windowMs)),
+                Criteria.where("orderId").is(null).and("createdAt").lt(new Date(now - claimTimeoutMs))));
+            Update takeOver = Update.update("claimToken", claimToken).set("createdAt", new Date(now)).unset("orderId");
+            return mongoTemplate.updateFirst(stale, takeOver, OrderIdempotencyRecord.class).getModifiedCount() > 0
+                ? claimToken : null;
+        }
+    }
+
+    private void complete(String key, String claimToken, Order order) {
+        try {
+            long updated = mongoTemplate.updateFirst(ownedBy(key, claimToken), Update.update("orderId", order.getId()),
+                OrderIdempotencyRecord.class).getModifiedCount();
+            if (updated == 0) {
+                log.warn("Claim on idempotency key {} was taken over before order {} was recorded", key, order.getId());
+            }
+        } catch (RuntimeException e) {
+            // The order is placed; retries within this process are still answered from memory
+            log.error("Recording idempotency key {} failed: {}", key, e.getMessage(), e);
+        }
+    }
+
+    private void release(String key, String claimToken) {
+        try {
+            mongoTemplate.remove(ownedBy(key, claimToken), OrderIdempotencyRecord.class);
+        } catch (RuntimeException e) {
+            // The claim is taken over once it times out
+            log.error("Releasing idempotency key {} failed: {}", key, e.getMessage(), e);
+        }
+    }
+
+    private static Query ownedBy(String key, String claimToken) {
+        return Query.query(Criteria.where("key").is(key).and("claimToken").is(claimToken));
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(POLL_INTERVAL_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an order with the same Idempotency-Key", e);
+        }
+    }
+
+    private void removeExpired(long now) {
+        // At most once a minute, whichever request gets there first
+        if (now < nextSweep) {
+            return;
+        }
+        nextSweep = now + TimeUnit.MINUTES.toMillis(1);
+        long cutoff = now - windowMs;
+        entries.values().removeIf(entry -> entry.createdAt < cutoff && entry.order.isDone());
+    }
+}
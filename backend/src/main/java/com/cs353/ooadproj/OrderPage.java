@@ -0,0 +1,17 @@
+package com.cs353.ooadproj;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One page of a user's keyset-paginated order history, newest first
+ * Orders come without their line items; nextCursor is null on the last page
+ */
+@Data
+@AllArgsConstructor
+public class OrderPage {
+    private List<Order> items;
+    private String nextCursor;
+}
@@ -0,0 +1,232 @@
+package com.cs353.ooadproj;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded in-process queue that places orders off the request thread
+ *
+ * Enabled with orders.async.enabled. Checkout requests only enqueue a
+ * PlaceOrderCommand and return; worker threads drain the queue in batches and
+ * run the commands through the OrderCommandInvoker. When the queue is full,
+ * submit refuses the request so the caller can push back instead of piling
+ * up threads. Workers are virtual threads on JVMs that have them.
+ */
+@Component
+@Slf4j
+public class OrderRequestQueue {
+    private final boolean enabled;
+    private final BlockingQueue<PendingOrder> queue;
+    private final Map<String, OrderRequestStatus> statuses = new ConcurrentHashMap<>();
+    // Idempotency key -> id of the request submitted with it
+    private final Map<String, String> requestIdsByKey = new ConcurrentHashMap<>();
+    private final OrderCommandInvoker commandInvoker;
+    private final OrderIdempotencyStore idempotencyStore;
+    private final int batchSize;
+    private final long statusRetentionMs;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+    private volatile long nextStatusSweep;
+
+    private static final class PendingOrder {
+        final PlaceOrderCommand command;
+        final OrderRequestStatus status;
+        final String idempotencyKey;
+
+        PendingOrder(PlaceOrderCommand command, OrderRequestStatus status, String idempotencyKey) {
+            this.command = command;
+            this.status = status;
+            this.idempotencyKey = idempotencyKey;
+        }
+    }
+
+    public OrderRequestQueue(OrderCommandInvoker commandInvoker, OrderIdempotencyStore idempotencyStore,
+                             @Value("${orders.async.enabled:false}") boolean enabled,
+                             @Value("${orders.async.queue-capacity:1000}") int queueCapacity,
+                             @Value("${orders.async.workers:4}") int workerCount,
+                             @Value("${orders.async.batch-size:32}") int batchSize,
+                             @Value("${orders.async.status-retention-minutes:30}") long statusRetentionMinutes) {
+        this.commandInvoker = commandInvoker;
+        this.idempotencyStore = idempotencyStore;
+        this.enabled = enabled;
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueCapacity, 1));
+        this.batchSize = Math.max(batchSize, 1);
+        this.statusRetentionMs = TimeUnit.MINUTES.toMillis(statusRetentionMinutes);
+
+        if (enabled) {
+            ThreadFactory threadFactory = workerThreadFactory();
+            for (int i = 0; i < workerCount; i++) {
+                Thread worker = threadFactory.newThread(this::work);
+                workers.add(worker);
+                worker.start();
+            }
+            log.info("Asynchronous order placement enabled with {} workers and a queue of {}", workerCount, queueCapacity);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enqueue an order, returning its status, or null when the queue is full
+     *
+     * A request repeating the idempotency key of one that is still known and has
+     * not failed gets that request's status back instead of being queued again.
+     * Keyed requests are placed through the OrderIdempotencyStore, so a retry
+     * queued after the status is gone, or on another instance, resolves to the
+     * order already placed under the key instead of a second one.
+     */
+    public OrderRequestStatus submit(String cartId, PlaceOrderCommand command, String idempotencyKey) {
+        OrderRequestStatus status = new OrderRequestStatus();
+        status.setRequestId(new ObjectId().toHexString());
+        status.setCartId(cartId);
+        statuses.put(status.getRequestId(), status);
+
+        if (idempotencyKey != null) {
+            String previousId = requestIdsByKey.merge(idempotencyKey, status.getRequestId(), (previous, submitted) -> {
+                OrderRequestStatus previousStatus = statuses.get(previous);
+                boolean retry = previousStatus == null || previousStatus.getState() == OrderRequestStatus.State.FAILED;
+                return retry ? submitted : previous;
+            });
+            if (!previousId.equals(status.getRequestId())) {
+                statuses.remove(status.getRequestId());
+                return statuses.get(previousId);
+            }
+        }
+
+        if (!queue.offer(new PendingOrder(command, status, idempotencyKey))) {
+            statuses.remove(status.getRequestId());
+            if (idempotencyKey != null) {
+                requestIdsByKey.remove(idempotencyKey, status.getRequestId());
+            }
+            return null;
+        }
+        return status;
+    }
+
+    public OrderRequestStatus getStatus(String requestId) {
+        return statuses.get(requestId);
+    }
+
+    /**
+     * Whether the queue is enabled, how many orders wait in it and how many statuses are kept
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("queued", queue.size());
+        stats.put("capacity", queue.size() + queue.remainingCapacity());
+        stats.put("workers", workers.size());
+        stats.put("statuses", statuses.size());
+        return stats;
+    }
+
+    private void work() {
+        List<PendingOrder> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                removeExpiredStatuses();
+                PendingOrder first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                // Take whatever else is waiting in one go instead of waking up per order
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                for (PendingOrder pending : batch) {
+                    place(pending);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void place(PendingOrder pending) {
+        OrderRequestStatus status = pending.status;
+        status.setState(OrderRequestStatus.State.PROCESSING);
+        try {
+            Order order = pending.idempotencyKey == null
+                ? execute(pending.command)
+                : idempotencyStore.placeOnce(pending.idempotencyKey, () -> execute(pending.command));
+            status.setOrderId(order.getId());
+            status.setState(OrderRequestStatus.State.COMPLETED);
+        } catch (RuntimeException e) {
+            log.error("Queued order for cart {} failed: {}", status.getCartId(), e.getMessage(), e);
+            status.setError(e.getMessage());
+            status.setState(OrderRequestStatus.State.FAILED);
+        } finally {
+            status.setFinishedAt(System.currentTimeMillis());
+        }
+    }
+
+    private Order execute(PlaceOrderCommand command) {
+        commandInvoker.executeCommand(command);
+        Order order = command.getSavedOrder();
+        if (order == null) {
+            throw new RuntimeException("Order creation failed - order is null");
+        }
+        return order;
+    }
+
+    private void removeExpiredStatuses() {
+        // At most once a minute, whichever worker gets there first
+        long now = System.currentTimeMillis();
+        if (now < nextStatusSweep) {
+            return;
+        }
+        nextStatusSweep = now + TimeUnit.MINUTES.toMillis(1);
+        long cutoff = now - statusRetentionMs;
+        statuses.values().removeIf(status -> status.getFinishedAt() > 0 && status.getFinishedAt() < cutoff);
+        requestIdsByKey.values().removeIf(requestId -> !statuses.containsKey(requestId));
+    }
+
+    /**
+     * Virtual threads where the JVM supports them (Java 21+), daemon platform threads otherwise
+     */
+    private static ThreadFactory workerThreadFactory() {
+        try {
+            // Looked up on the public builder interfaces, the implementing classes are not accessible
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method name = Class.forName("java.lang.Thread$Builder$OfVirtual").getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, "order-worker-", 0L);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return runnable -> {
+                Thread thread = new Thread(runnable, "order-worker-" + counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Workers finish the batch in hand and stop at their next poll
+        running = false;
+        if (!queue.isEmpty()) {
+            log.warn("Shutting down with {} queued orders not placed", queue.size());
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.cs353.ooadproj;
+
+import lombok.Data;
+
+/**
+ * Progress of an order placed through the asynchronous order queue
+ */
+@Data
+public class OrderRequestStatus {
+    public enum State {
+        QUEUED, PROCESSING, COMPLETED, FAILED
+    }
+
+    private String requestId;
+    private String cartId;
+    private volatile State state = State.QUEUED;
+    // Set once the order has been saved
+    private volatile String orderId;
+    private volatile String error;
+    private long submittedAt = System.currentTimeMillis();
+    private volatile long finishedAt;
+}
@@ -4,7 +4,7 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 
 import java.util.List;
 
-public interface OrdersRepo extends MongoRepository<Order, String> {
-    List<Order> findByUserId (String userId);
+public interface OrdersRepo extends MongoRepository<Order, String>, OrdersRepoCustom {
+    List<Order> findByUserIdOrderByOrderDateDesc(String userId);
 
 }
@@ -0,0 +1,16 @@
+package com.cs353.ooadproj;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Custom order queries that cannot be expressed as derived repository methods
+ */
+interface OrdersRepoCustom {
+
+    /**
+     * Fetch up to limit of the user's orders placed within [from, to), newest first,
+     * starting after the cursor. Either bound may be null. Line items are not read.
+     */
+    List<Order> findHistory(String userId, Instant from, Instant to, OrderCursor after, int limit);
+}
@@ -0,0 +1,46 @@
+package com.cs353.ooadproj;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * MongoTemplate-backed implementation of the custom order queries
+ */
+class OrdersRepoCustomImpl implements OrdersRepoCustom {
+    private final MongoTemplate mongoTemplate;
+
+    OrdersRepoCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public List<Order> findHistory(String userId, Instant from, Instant to, OrderCursor after, int limit) {
+        // Every condition is on the (userId, orderDate, id) index, so a page is one index range scan
+        Criteria criteria = Criteria.where("userId").is(userId);
+        if (from != null || to != null) {
+            Criteria orderDate = criteria.and("orderDate");
+            if (from != null) {
+                orderDate.gte(from);
+            }
+            if (to != null) {
+                orderDate.lt(to);
+            }
+        }
+        Query query = Query.query(criteria)
+            .with(Sort.by(Sort.Direction.DESC, "orderDate").and(Sort.by(Sort.Direction.DESC, "id")))
+            .limit(limit);
+
+        if (after != null) {
+            query.addCriteria(new Criteria().orOperator(
+                Criteria.where("orderDate").lt(after.getLastOrderDate()),
+                Criteria.where("orderDate").is(after.getLastOrderDate()).and("id").lt(after.getLastId())));
+        }
+        query.fields().exclude("lineItems");
+        return mongoTemplate.find(query, Order.class);
+    }
+}
@@ -1,8 +1,11 @@
 package com.cs353.ooadproj;
 
 import lombok.extern.slf4j.Slf4j;
-import java.time.LocalDateTime;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Command implementation for placing an order
@@ -14,25 +17,30 @@ public class PlaceOrderCommand implements OrderCommand {
     private final String address;
     private final String deliveryDate;
     private final OrdersRepo ordersRepo;
-    private final ShoppingCartRepo cartRepo;
+    private final CartStore cartStore;
+    private final ProductRepositoryProxy productRepo;
     private Order savedOrder;
     private ShoppingCart originalCart;
     
     public PlaceOrderCommand(String cartId, String address, String deliveryDate,
-                          OrdersRepo ordersRepo, ShoppingCartRepo cartRepo) {
+                          OrdersRepo ordersRepo, CartStore cartStore, ProductRepositoryProxy productRepo) {
         this.cartId = cartId;
         this.address = address;
         this.deliveryDate = deliveryDate;
         this.ordersRepo = ordersRepo;
-        this.cartRepo = cartRepo;
+        this.cartStore = cartStore;
+        this.productRepo = productRepo;
     }
     
     @Override
     public void execute() {
         try {
             // Find the cart
-            ShoppingCart cart = cartRepo.findById(cartId)
-                .orElseThrow(() -> new RuntimeException("Cart not found with ID: " + cartId));
+            // The store returns the latest state even if it has not been written back yet
+            ShoppingCart cart = cartStore.findById(cartId);
+            if (cart == null) {
+                throw new RuntimeException("Cart not found with ID: " + cartId);
+            }
             
             if (cart.getLineItems() == null || cart.getLineItems().isEmpty()) {
                 throw new RuntimeException("Cannot place order with empty cart");
@@ -52,40 +60,93 @@ public class PlaceOrderCommand implements OrderCommand {
             order.setTotalCost(cart.getTotalCost());
             order.setAddress(address);
             order.setDeliveryDate(deliveryDate);
-            order.setOrderDate(LocalDateTime.now().toString());
+            order.setOrderDate(Instant.now());
             
             // Save order and update cart
             savedOrder = ordersRepo.save(order);
             log.info("Order created successfully with ID: {}", savedOrder.getId());
             
-            // Clear cart items but keep the cart
-            cart.getLineItems().clear();
-            cart.setTotalCost(0.0);
-            cartRepo.save(cart);
+            // Remove just the ordered items, so anything added from another tab meanwhile stays in the cart
+            List<String> orderedIds = new ArrayList<>();
+            for (LineItem lineItem : savedOrder.getLineItems()) {
+                orderedIds.add(lineItem.getTrueId());
+            }
+            cartStore.removeLineItems(cart.getUserId(), orderedIds);
+            cartStore.flush(cart.getUserId());
             
         } catch (Exception e) {
             log.error("Failed to place order: {}", e.getMessage(), e);
             throw new RuntimeException("Order placement failed: " + e.getMessage(), e);
         }
+        
+        // Feed the best-seller rankings once the order is in place
+        recordSales(1);
     }
     
     @Override
     public void undo() {
         if (savedOrder != null) {
             ordersRepo.deleteById(savedOrder.getId());
+            recordSales(-1);
             
             if (originalCart != null) {
-                ShoppingCart currentCart = cartRepo.findById(cartId).orElse(null);
-                if (currentCart != null) {
-                    currentCart.setLineItems(originalCart.getLineItems());
-                    currentCart.setTotalCost(originalCart.getTotalCost());
-                    cartRepo.save(currentCart);
-                }
+                // Put the ordered items back without overwriting what was added since
+                cartStore.addLineItems(originalCart.getUserId(), originalCart.getLineItems());
+            }
+        }
+    }
+    
+    private void recordSales(int sign) {
+        // Rankings are best effort; failing to update them must not fail or half-undo an order
+        try {
+            productRepo.recordSales(quantitiesByProduct(savedOrder.getLineItems(), sign));
+        } catch (RuntimeException e) {
+            log.error("Updating sales counts for order {} failed: {}", savedOrder.getId(), e.getMessage(), e);
+        }
+    }
+    
+    private static Map<String, Integer> quantitiesByProduct(List<LineItem> lineItems, int sign) {
+        Map<String, Integer> quantities = new HashMap<>();
+        for (LineItem lineItem : lineItems) {
+            if (lineItem.getProductId() != null) {
+                quantities.merge(lineItem.getProductId(), sign * lineItem.getQuantity(), Integer::sum);
             }
         }
+        return quantities;
     }
     
     public Order getSavedOrder() {
         return savedOrder;
     }
+    
+    @Override
+    public String getUserId() {
+        return savedOrder != null ? savedOrder.getUserId() : null;
+    }
+    
+    @Override
+    public long estimateRetainedBytes() {
+        if (savedOrder == null) {
+            return 0;
+        }
+        // The order and the original cart share the same line item objects, so count them once
+        long bytes = 64;
+        bytes += ProductWeigher.estimateBytes(savedOrder.getId());
+        bytes += ProductWeigher.estimateBytes(savedOrder.getUserId());
+        bytes += ProductWeigher.estimateBytes(savedOrder.getAddress());
+        bytes += ProductWeigher.estimateBytes(savedOrder.getDeliveryDate());
+        // Order date
+        bytes += 24;
+        for (LineItem lineItem : savedOrder.getLineItems()) {
+            // Line item header and fields plus its ObjectId
+            bytes += 48 + 24;
+            bytes += ProductWeigher.estimateBytes(lineItem.getTrueId());
+            bytes += ProductWeigher.estimateBytes(lineItem.getProductId());
+            bytes += ProductWeigher.estimateBytes(lineItem.getTitle());
+            bytes += ProductWeigher.estimateBytes(lineItem.getThumbnail());
+        }
+        // Two list copies of references plus the original cart object
+        bytes += 2L * 8 * savedOrder.getLineItems().size() + 48;
+        return bytes;
+    }
 }
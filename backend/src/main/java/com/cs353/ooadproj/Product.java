@@ -9,11 +9,20 @@ import javax.persistence.Entity;
 //import javax.persistence.Id;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Data
 @Document
+// Keyset pagination sorts on (key, _id), so each sort key gets a matching compound index
+@CompoundIndexes({
+    @CompoundIndex(name = "price_id", def = "{'price': 1, '_id': 1}"),
+    @CompoundIndex(name = "title_id", def = "{'title': 1, '_id': 1}"),
+    @CompoundIndex(name = "averageRating_id", def = "{'averageRating': 1, '_id': 1}")
+})
 public class Product {
+    public static final int RECENT_REVIEWS = 5;
 
     @Id
     private String id;
@@ -22,6 +31,12 @@ public class Product {
     private String description;
     private List<String> images;
     private List<String> tags;
+    // Full review history lives in the reviews collection; only the newest few are embedded
     private List<Review> reviews = new ArrayList<>();
+    private RatingSummary ratingSummary = new RatingSummary();
+    // Copy of ratingSummary.average kept as a plain field so it can be indexed and sorted on
+    private double averageRating;
+    // Units sold across all orders, maintained by PlaceOrderCommand
+    private long salesCount;
 
 }
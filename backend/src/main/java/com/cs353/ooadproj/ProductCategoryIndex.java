@@ -0,0 +1,168 @@
+package com.cs353.ooadproj;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory tag index mapping each normalized tag to a bitmap of product ordinals
+ * Multi-tag AND/OR queries are answered with bitmap intersections and unions
+ */
+@Component
+@Slf4j
+public class ProductCategoryIndex implements CatalogListener {
+    private final Map<String, BitSet> tagBitmaps = new HashMap<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<Product> productsByOrdinal = new ArrayList<>();
+    // Ordinals of deleted products, reused so the bitmaps stay dense
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Normalize a tag the same way for indexing and querying
+     */
+    public static String normalize(String tag) {
+        return tag == null ? "" : tag.trim().toLowerCase();
+    }
+
+    @Override
+    public void onCatalogLoaded(List<Product> products) {
+        lock.writeLock().lock();
+        try {
+            tagBitmaps.clear();
+            ordinals.clear();
+            productsByOrdinal.clear();
+            freeOrdinals.clear();
+            for (Product product : products) {
+                addProduct(product);
+            }
+            log.info("Category index rebuilt with {} products and {} tags", ordinals.size(), tagBitmaps.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onProductSaved(Product product) {
+        lock.writeLock().lock();
+        try {
+            removeProduct(product.getId());
+            addProduct(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onProductDeleted(String id) {
+        lock.writeLock().lock();
+        try {
+            removeProduct(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find products carrying all (matchAll) or any of the given tags
+     */
+    public List<Product> findByTags(Collection<String> tags, boolean matchAll) {
+        lock.readLock().lock();
+        try {
+            BitSet result = null;
+            for (String tag : tags) {
+                String normalized = normalize(tag);
+                if (normalized.isEmpty()) {
+                    continue;
+                }
+
+                BitSet bitmap = tagBitmaps.get(normalized);
+                if (bitmap == null) {
+                    if (matchAll) {
+                        return Collections.emptyList();
+                    }
+                    continue;
+                }
+
+                if (result == null) {
+                    result = (BitSet) bitmap.clone();
+                } else if (matchAll) {
+                    result.and(bitmap);
+                } else {
+                    result.or(bitmap);
+                }
+            }
+
+            if (result == null) {
+                return Collections.emptyList();
+            }
+
+            List<Product> products = new ArrayList<>(result.cardinality());
+            for (int ordinal = result.nextSetBit(0); ordinal >= 0; ordinal = result.nextSetBit(ordinal + 1)) {
+                products.add(productsByOrdinal.get(ordinal));
+            }
+            return products;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addProduct(Product product) {
+        if (product.getId() == null) {
+            return;
+        }
+
+        int ordinal;
+        if (freeOrdinals.isEmpty()) {
+            ordinal = productsByOrdinal.size();
+            productsByOrdinal.add(product);
+        } else {
+            ordinal = freeOrdinals.pop();
+            productsByOrdinal.set(ordinal, product);
+        }
+        ordinals.put(product.getId(), ordinal);
+
+        if (product.getTags() != null) {
+            for (String tag : product.getTags()) {
+                String normalized = normalize(tag);
+                if (!normalized.isEmpty()) {
+                    tagBitmaps.computeIfAbsent(normalized, t -> new BitSet()).set(ordinal);
+                }
+            }
+        }
+    }
+
+    private void removeProduct(String id) {
+        Integer ordinal = ordinals.remove(id);
+        if (ordinal == null) {
+            return;
+        }
+
+        Product product = productsByOrdinal.set(ordinal, null);
+        freeOrdinals.push(ordinal);
+
+        if (product.getTags() != null) {
+            for (String tag : product.getTags()) {
+                String normalized = normalize(tag);
+                BitSet bitmap = tagBitmaps.get(normalized);
+                if (bitmap != null) {
+                    bitmap.clear(ordinal);
+                    if (bitmap.isEmpty()) {
+                        tagBitmaps.remove(normalized);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -1,8 +1,20 @@
 package com.cs353.ooadproj;
 
 import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.InputStream;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -16,25 +28,88 @@ public class ProductController {
     private final ProductRepositoryProxy productRepo;
     private final UsersRepo usersRepo;
     private final AuthorizationService authorizationService;
+    private final ReviewsRepo reviewsRepo;
+    private final ResponseBodyCache responseCache;
+    private final BulkImportService bulkImportService;
+    private final MongoTemplate mongoTemplate;
+    private static final int MAX_REVIEW_PAGE_SIZE = 50;
+    private static final int MAX_TOP_PRODUCTS = 100;
 
     public ProductController(ProductRepositoryProxy productRepo, UsersRepo usersRepo, 
-                            AuthorizationService authorizationService) {
+                            AuthorizationService authorizationService, ReviewsRepo reviewsRepo,
+                            ResponseBodyCache responseCache, BulkImportService bulkImportService,
+                            MongoTemplate mongoTemplate) {
         this.productRepo = productRepo;
         this.usersRepo = usersRepo;
         this.authorizationService = authorizationService;
+        this.reviewsRepo = reviewsRepo;
+        this.responseCache = responseCache;
+        this.bulkImportService = bulkImportService;
+        this.mongoTemplate = mongoTemplate;
     }
 
     @CrossOrigin()
     @GetMapping("/products")
-    public List<Product> getProducts() {
+    public ResponseEntity<byte[]> getProducts(WebRequest request) {
         log.info("Getting products");
-        return productRepo.findAll();
+        String eTag = catalogETag();
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return responseCache.respond("products" + eTag, request.getHeader(HttpHeaders.ACCEPT_ENCODING),
+            productRepo::findAllSummaries);
+    }
+
+    @CrossOrigin()
+    @GetMapping(value = "/products", params = "limit")
+    public ProductPage getProductPage(@RequestParam("limit") int limit,
+                                      @RequestParam(value = "cursor", required = false) String cursor,
+                                      @RequestParam(value = "sort", defaultValue = "title") String sort,
+                                      @RequestParam(value = "direction", defaultValue = "asc") String direction,
+                                      @RequestParam(value = "minPrice", required = false) Double minPrice,
+                                      @RequestParam(value = "maxPrice", required = false) Double maxPrice) {
+        log.info("Getting products page (limit {}, sort {} {}, price {} to {})", limit, sort, direction, minPrice, maxPrice);
+        try {
+            return productRepo.findPage(ProductSort.fromParam(sort), "desc".equalsIgnoreCase(direction), cursor, limit,
+                minPrice, maxPrice);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    @CrossOrigin()
+    @GetMapping("/products/top")
+    public ResponseEntity<byte[]> getTopProducts(@RequestParam(value = "category", required = false) String category,
+                                                 @RequestParam(value = "by", defaultValue = "rating") String by,
+                                                 @RequestParam(value = "k", defaultValue = "10") int k,
+                                                 WebRequest request) {
+        log.info("Getting top {} products by {} in category {}", k, by, category);
+        ProductLeaderboard.Ranking ranking;
+        try {
+            ranking = ProductLeaderboard.Ranking.fromParam(by);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        
+        String eTag = catalogETag();
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        int limit = Math.max(1, Math.min(k, MAX_TOP_PRODUCTS));
+        String tag = category == null || category.isBlank() ? null : category;
+        String key = "top:" + ranking + ":" + (tag == null ? "" : ProductCategoryIndex.normalize(tag)) + ":" + limit + eTag;
+        return responseCache.respond(key, request.getHeader(HttpHeaders.ACCEPT_ENCODING),
+            () -> productRepo.findTop(tag, ranking, limit));
     }
 
     @CrossOrigin()
     @GetMapping("/products/{id}")
-    public Product getProduct(@PathVariable String id) {
+    public Product getProduct(@PathVariable String id, WebRequest request) {
         log.info("Getting product #{}", id);
+        long version = productRepo.getProductVersion(id);
+        if (version >= 0 && request.checkNotModified(eTag("p", version))) {
+            return null;
+        }
         return productRepo.findById(id).orElse(null);
     }
 
@@ -50,8 +125,27 @@ public class ProductController {
             if (product.getReviews() == null) {
                 product.setReviews(new ArrayList<>());
             }
+            // Reviews increment the summary in place, so it has to exist from the start
+            // and is derived from the reviews rather than taken from the request
+            RatingSummary summary = RatingSummary.fromReviews(ReviewUtils.getReviewIterator(product));
+            product.setRatingSummary(summary);
+            product.setAverageRating(summary.getAverage());
             
-            return productRepo.save(product);
+            // Like imported products, the full history goes to the reviews collection
+            // and only the newest reviews stay embedded
+            if (product.getId() == null) {
+                product.setId(new ObjectId().toHexString());
+            }
+            List<Review> reviews = product.getReviews();
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Review.class);
+            ReviewUtils.moveToReviewsCollection(bulk, product.getId(), reviews);
+            product.setReviews(ReviewUtils.recentReviews(reviews));
+            
+            Product savedProduct = productRepo.save(product);
+            if (!reviews.isEmpty()) {
+                bulk.execute();
+            }
+            return savedProduct;
         } else {
             throw new IllegalArgumentException("Unauthorized!");
         }
@@ -62,28 +156,73 @@ public class ProductController {
     public Product reviewProduct(@PathVariable String id, @RequestBody Review review) {
         log.info("Adding Review {} to Product #{}", review, id);
         
-        Optional<Product> optionalProduct = productRepo.findById(id);
+        if (!RatingSummary.isValidRating(review.getRating())) {
+            throw new IllegalArgumentException("Rating must be between 1 and 5");
+        }
         
-        if (optionalProduct.isPresent()) {
-            Product product = optionalProduct.get();
-            
-            if (product.getReviews() == null) {
-                product.setReviews(new ArrayList<>());
-            }
-            
-            product.getReviews().add(review);
-            
-            // Calculate average rating using the Iterator pattern
-            double avgRating = ReviewUtils.getAverageRating(product);
-            log.info("New average rating for product {}: {}", id, avgRating);
-            
-            return productRepo.save(product);
+        // Always a new review: a client-supplied id would overwrite someone else's,
+        // and a client-supplied date could pin it to the top of the newest reviews
+        review.setId(null);
+        review.setProductId(id);
+        review.setDate(LocalDateTime.now().toString());
+        Review savedReview = reviewsRepo.insert(review);
+        
+        // One atomic $push/$inc on the product instead of a read-modify-write of the
+        // whole document, so concurrent reviewers cannot overwrite each other
+        Optional<Product> updatedProduct = productRepo.appendReview(id, savedReview);
+        
+        if (updatedProduct.isPresent()) {
+            log.info("New average rating for product {}: {}", id, updatedProduct.get().getAverageRating());
+            return updatedProduct.get();
         } else {
             log.warn("Product not found: {}", id);
+            reviewsRepo.deleteById(savedReview.getId());
             throw new IllegalArgumentException("Product not found!");
         }
     }
     
+    @CrossOrigin()
+    @GetMapping("/products/{id}/reviews")
+    public List<Review> getProductReviews(@PathVariable String id,
+                                          @RequestParam(value = "sort", defaultValue = "newest") String sort,
+                                          @RequestParam(value = "page", defaultValue = "0") int page,
+                                          @RequestParam(value = "size", defaultValue = "10") int size) {
+        log.info("Getting reviews for Product #{} (sort {}, page {})", id, sort, page);
+        
+        Sort order;
+        switch (sort.toLowerCase()) {
+            case "highest":
+                order = Sort.by(Sort.Order.desc("rating"), Sort.Order.desc("date"));
+                break;
+            case "lowest":
+                order = Sort.by(Sort.Order.asc("rating"), Sort.Order.asc("date"));
+                break;
+            case "newest":
+                order = Sort.by(Sort.Order.desc("date"));
+                break;
+            default:
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported review sort: " + sort);
+        }
+        
+        int pageSize = Math.max(1, Math.min(size, MAX_REVIEW_PAGE_SIZE));
+        return reviewsRepo.findByProductId(id, PageRequest.of(Math.max(page, 0), pageSize, order)).getContent();
+    }
+    
+    /**
+     * Import products from an NDJSON body, one product per line
+     */
+    @CrossOrigin()
+    @PostMapping("/products/bulk")
+    public BulkImportResult importProducts(InputStream body, @RequestParam("userId") String userId) {
+        log.info("Bulk importing products by {}", userId);
+        
+        if (!authorizationService.isAdmin(userId)) {
+            log.warn("User #{} attempted to import products without authorization", userId);
+            throw new IllegalArgumentException("Unauthorized!");
+        }
+        return bulkImportService.importProducts(body);
+    }
+
     @CrossOrigin()
     @DeleteMapping("/products/{id}")
     public void deleteProduct(@PathVariable String id, @RequestParam("userId") String userId) {
@@ -100,27 +239,85 @@ public class ProductController {
 
     @CrossOrigin()
     @GetMapping("/products/search")
-    public List<Product> searchProducts(@RequestParam("query") String query) {
+    public List<ProductSummary> searchProducts(@RequestParam("query") String query, WebRequest request) {
         log.info("Searching for products with query: {}", query);
-        String searchQuery = query.toLowerCase();
-        
-        return productRepo.findAll().stream()
-            .filter(product -> 
-                (product.getTitle() != null && product.getTitle().toLowerCase().contains(searchQuery)) ||
-                (product.getDescription() != null && product.getDescription().toLowerCase().contains(searchQuery)))
-            .collect(Collectors.toList());
+        if (request.checkNotModified(catalogETag())) {
+            return null;
+        }
+        return productRepo.search(query);
+    }
+    
+    @CrossOrigin()
+    @GetMapping("/products/suggest")
+    public List<String> suggestProducts(@RequestParam("prefix") String prefix,
+                                        @RequestParam(value = "limit", defaultValue = "10") int limit,
+                                        WebRequest request) {
+        if (request.checkNotModified(catalogETag())) {
+            return null;
+        }
+        return productRepo.suggest(prefix, Math.max(1, Math.min(limit, ProductSuggestIndex.TOP_N)));
     }
     
+    @CrossOrigin()
+    @GetMapping("/products/facets")
+    public ResponseEntity<byte[]> getProductFacets(@RequestParam(value = "query", required = false) String query,
+                                                   @RequestParam(value = "tags", required = false) List<String> tags,
+                                                   @RequestParam(value = "match", defaultValue = "all") String match,
+                                                   WebRequest request) {
+        log.info("Getting facets for query {} and tags {} (match {})", query, tags, match);
+        String eTag = catalogETag();
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        boolean matchAll = !"any".equalsIgnoreCase(match);
+        String normalizedQuery = query == null ? "" : String.join(" ", ProductSearchIndex.tokenize(query));
+        String normalizedTags = tags == null ? "" : tags.stream().map(ProductCategoryIndex::normalize).sorted()
+            .collect(Collectors.joining(","));
+        String key = "facets:" + normalizedQuery + ":" + matchAll + ":" + normalizedTags + eTag;
+        return responseCache.respond(key, request.getHeader(HttpHeaders.ACCEPT_ENCODING),
+            () -> productRepo.findFacets(query, tags, matchAll));
+    }
+
     @CrossOrigin()
     @GetMapping("/products/category/{category}")
-    public List<Product> getProductsByCategory(@PathVariable String category) {
+    public ResponseEntity<byte[]> getProductsByCategory(@PathVariable String category, WebRequest request) {
         log.info("Getting products for category: {}", category);
-        String categoryLower = category.toLowerCase();
-        
-        return productRepo.findAll().stream()
-            .filter(product -> product.getTags() != null && 
-                product.getTags().stream()
-                    .anyMatch(tag -> tag.toLowerCase().equals(categoryLower)))
-            .collect(Collectors.toList());
+        String eTag = catalogETag();
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        String key = "category:" + ProductCategoryIndex.normalize(category) + eTag;
+        return responseCache.respond(key, request.getHeader(HttpHeaders.ACCEPT_ENCODING),
+            () -> productRepo.findByTags(List.of(category), true));
+    }
+
+    @CrossOrigin()
+    @GetMapping("/products/category")
+    public ResponseEntity<byte[]> getProductsByTags(@RequestParam("tags") List<String> tags,
+                                                    @RequestParam(value = "match", defaultValue = "all") String match,
+                                                    WebRequest request) {
+        log.info("Getting products for tags {} (match {})", tags, match);
+        String eTag = catalogETag();
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        boolean matchAll = !"any".equalsIgnoreCase(match);
+        // Tag order does not change the result, so it must not change the key either
+        String key = tags.stream().map(ProductCategoryIndex::normalize).sorted()
+            .collect(Collectors.joining(",", "tags:" + matchAll + ":", eTag));
+        return responseCache.respond(key, request.getHeader(HttpHeaders.ACCEPT_ENCODING),
+            () -> productRepo.findByTags(tags, matchAll));
+    }
+
+    /**
+     * Strong ETag for anything derived from the whole catalog
+     * Answering If-None-Match needs only the version, not the products or Jackson
+     */
+    private String catalogETag() {
+        return eTag("c", productRepo.getCatalogVersion());
+    }
+
+    private String eTag(String kind, long version) {
+        return "\"" + kind + productRepo.getInstanceId() + "-" + version + "\"";
     }
 }
@@ -0,0 +1,63 @@
+package com.cs353.ooadproj;
+
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset cursor pointing just after the last product of a page
+ * Encodes the sort key, direction, last sort value and last id so the next
+ * page can be fetched with an indexed range query instead of skip/offset
+ */
+@Getter
+public class ProductCursor {
+    private static final String SEPARATOR = "\n";
+    private static final String NULL_VALUE = "\u0000";
+
+    private final ProductSort sort;
+    private final boolean descending;
+    private final Object lastValue;
+    private final String lastId;
+
+    public ProductCursor(ProductSort sort, boolean descending, Object lastValue, String lastId) {
+        this.sort = sort;
+        this.descending = descending;
+        this.lastValue = lastValue;
+        this.lastId = lastId;
+    }
+
+    /**
+     * Build the cursor that continues after the given product
+     */
+    public static ProductCursor after(ProductSummary product, ProductSort sort, boolean descending) {
+        return new ProductCursor(sort, descending, sort.valueOf(product), product.getId());
+    }
+
+    public String encode() {
+        String value = lastValue == null ? NULL_VALUE : lastValue.toString();
+        String raw = sort.name() + SEPARATOR + (descending ? "desc" : "asc") + SEPARATOR + lastId + SEPARATOR + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a cursor issued by {@link #encode()}, rejecting anything malformed
+     */
+    public static ProductCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            // The value goes last so titles containing the separator still round-trip
+            String[] parts = raw.split(SEPARATOR, 4);
+            ProductSort sort = ProductSort.valueOf(parts[0]);
+            boolean descending = "desc".equals(parts[1]);
+            String lastId = parts[2];
+            Object lastValue = null;
+            if (!NULL_VALUE.equals(parts[3])) {
+                lastValue = sort == ProductSort.TITLE ? parts[3] : Double.valueOf(parts[3]);
+            }
+            return new ProductCursor(sort, descending, lastValue, lastId);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
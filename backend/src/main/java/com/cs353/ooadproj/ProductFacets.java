@@ -0,0 +1,23 @@
+package com.cs353.ooadproj;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * Filter sidebar counts for a set of products
+ */
+@Data
+@AllArgsConstructor
+public class ProductFacets {
+    private int total;
+    // tag -> number of products, most frequent first
+    private Map<String, Integer> tags;
+    // price range label -> number of products, cheapest first
+    private Map<String, Integer> prices;
+    // rounded average rating -> number of products, best first
+    private Map<Integer, Integer> ratings;
+    private Double minPrice;
+    private Double maxPrice;
+}
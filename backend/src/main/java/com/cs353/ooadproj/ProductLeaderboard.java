@@ -0,0 +1,236 @@
+package com.cs353.ooadproj;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Live top-rated and best-selling rankings, overall and per tag
+ * Each ranking is an ordered set updated in O(log n) per product write,
+ * so reading the top k products costs O(k) instead of a full sort
+ *
+ * Sales counts are taken from the catalog when it is loaded and then moved by
+ * the quantities of placed orders, which are applied here alone rather than as
+ * product writes. Being additions they commute, so concurrent orders cannot
+ * overwrite each other's counts. An order placed while the catalog is being
+ * loaded may be counted from the load or not at all until the next one.
+ */
+@Component
+@Slf4j
+public class ProductLeaderboard implements CatalogListener {
+    // Board key for the ranking across all products
+    private static final String ALL = "";
+
+    private final Map<String, NavigableSet<Entry>> byRating = new HashMap<>();
+    private final Map<String, NavigableSet<Entry>> bySales = new HashMap<>();
+    // Last indexed version of each product, needed to find its entries again on update
+    private final Map<String, Product> products = new HashMap<>();
+    // Current sales count of each indexed product, which its indexed copy may lag behind
+    private final Map<String, Long> salesCounts = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public enum Ranking {
+        RATING,
+        SALES;
+
+        public static Ranking fromParam(String param) {
+            for (Ranking ranking : values()) {
+                if (ranking.name().equalsIgnoreCase(param)) {
+                    return ranking;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported ranking: " + param);
+        }
+    }
+
+    private static final class Entry {
+        final Product product;
+        final double score;
+        final long tieBreak;
+
+        Entry(Product product, double score, long tieBreak) {
+            this.product = product;
+            this.score = score;
+            this.tieBreak = tieBreak;
+        }
+    }
+
+    // Highest score first, then highest tie-break, then by id so entries are unique
+    private static final Comparator<Entry> ORDER = (e1, e2) -> {
+        int cmp = Double.compare(e2.score, e1.score);
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = Long.compare(e2.tieBreak, e1.tieBreak);
+        if (cmp != 0) {
+            return cmp;
+        }
+        return e1.product.getId().compareTo(e2.product.getId());
+    };
+
+    @Override
+    public void onCatalogLoaded(List<Product> catalog) {
+        lock.writeLock().lock();
+        try {
+            byRating.clear();
+            bySales.clear();
+            products.clear();
+            salesCounts.clear();
+            for (Product product : catalog) {
+                addProduct(product, product.getSalesCount());
+            }
+            log.info("Leaderboards rebuilt for {} products and {} tags", products.size(), byRating.size() - 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onProductSaved(Product product) {
+        lock.writeLock().lock();
+        try {
+            // The saved copy may predate orders already counted here
+            Long salesCount = salesCounts.get(product.getId());
+            removeProduct(product.getId());
+            addProduct(product, salesCount != null ? salesCount : product.getSalesCount());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onProductDeleted(String id) {
+        lock.writeLock().lock();
+        try {
+            removeProduct(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add sold quantities, negative for cancelled orders, to the sales counts of indexed products
+     */
+    public void addSales(Map<String, Integer> quantitiesByProductId) {
+        lock.writeLock().lock();
+        try {
+            quantitiesByProductId.forEach((id, quantity) -> {
+                Product product = products.get(id);
+                if (product == null) {
+                    return;
+                }
+                long salesCount = salesCounts.get(id);
+                Entry previous = salesEntry(product, salesCount);
+                Entry updated = salesEntry(product, salesCount + quantity);
+                for (String key : boardKeys(product)) {
+                    removeEntry(bySales, key, previous);
+                    bySales.computeIfAbsent(key, k -> new TreeSet<>(ORDER)).add(updated);
+                }
+                salesCounts.put(id, salesCount + quantity);
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The k best products for the ranking, within one tag or across the whole catalog
+     */
+    public List<Product> top(String category, Ranking ranking, int k) {
+        String key = category == null ? ALL : ProductCategoryIndex.normalize(category);
+        lock.readLock().lock();
+        try {
+            NavigableSet<Entry> board = boards(ranking).get(key);
+            if (board == null) {
+                return Collections.emptyList();
+            }
+
+            List<Product> result = new ArrayList<>(Math.min(k, board.size()));
+            Iterator<Entry> entries = board.iterator();
+            while (entries.hasNext() && result.size() < k) {
+                result.add(entries.next().product);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<String, NavigableSet<Entry>> boards(Ranking ranking) {
+        return ranking == Ranking.SALES ? bySales : byRating;
+    }
+
+    private static Entry ratingEntry(Product product) {
+        RatingSummary summary = product.getRatingSummary();
+        return new Entry(product, product.getAverageRating(), summary == null ? 0 : summary.getCount());
+    }
+
+    private static Entry salesEntry(Product product, long salesCount) {
+        return new Entry(product, salesCount, 0);
+    }
+
+    private static List<String> boardKeys(Product product) {
+        List<String> keys = new ArrayList<>();
+        keys.add(ALL);
+        if (product.getTags() != null) {
+            for (String tag : product.getTags()) {
+                String normalized = ProductCategoryIndex.normalize(tag);
+                if (!normalized.isEmpty() && !keys.contains(normalized)) {
+                    keys.add(normalized);
+                }
+            }
+        }
+        return keys;
+    }
+
+    private void addProduct(Product product, long salesCount) {
+        if (product.getId() == null) {
+            return;
+        }
+
+        Entry rating = ratingEntry(product);
+        Entry sales = salesEntry(product, salesCount);
+        for (String key : boardKeys(product)) {
+            byRating.computeIfAbsent(key, k -> new TreeSet<>(ORDER)).add(rating);
+            bySales.computeIfAbsent(key, k -> new TreeSet<>(ORDER)).add(sales);
+        }
+        products.put(product.getId(), product);
+        salesCounts.put(product.getId(), salesCount);
+    }
+
+    private void removeProduct(String id) {
+        Product product = products.remove(id);
+        if (product == null) {
+            return;
+        }
+
+        // Entries compare by score and id, so rebuilding them from the indexed product finds the originals
+        Entry rating = ratingEntry(product);
+        Entry sales = salesEntry(product, salesCounts.remove(id));
+        for (String key : boardKeys(product)) {
+            removeEntry(byRating, key, rating);
+            removeEntry(bySales, key, sales);
+        }
+    }
+
+    private static void removeEntry(Map<String, NavigableSet<Entry>> boards, String key, Entry entry) {
+        NavigableSet<Entry> board = boards.get(key);
+        if (board != null) {
+            board.remove(entry);
+            if (board.isEmpty()) {
+                boards.remove(key);
+            }
+        }
+    }
+}
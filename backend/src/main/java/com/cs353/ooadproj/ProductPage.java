@@ -0,0 +1,17 @@
+package com.cs353.ooadproj;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated product listing
+ * nextCursor is null once the last page has been reached
+ */
+@Data
+@AllArgsConstructor
+public class ProductPage {
+    private List<ProductSummary> items;
+    private String nextCursor;
+}
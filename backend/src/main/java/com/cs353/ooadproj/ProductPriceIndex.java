@@ -0,0 +1,249 @@
+package com.cs353.ooadproj;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of products ordered by (price, id) in parallel primitive arrays
+ *
+ * A price range is two binary searches over the sorted double[] and a slice
+ * between them, so a lookup costs O(log n + results) however large the catalog is.
+ * Writes shift the arrays by one slot instead of re-sorting. Products without a
+ * price are not indexed, since they fall in no range.
+ */
+@Component
+@Slf4j
+public class ProductPriceIndex implements CatalogListener {
+    // Sorted by price, then by id; entries [0, size) are in use
+    private double[] prices = new double[0];
+    private int[] ordinalsByPosition = new int[0];
+    private int size;
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final Map<String, Double> indexedPrices = new HashMap<>();
+    private final List<Product> productsByOrdinal = new ArrayList<>();
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Override
+    public void onCatalogLoaded(List<Product> products) {
+        lock.writeLock().lock();
+        try {
+            ordinals.clear();
+            indexedPrices.clear();
+            productsByOrdinal.clear();
+            freeOrdinals.clear();
+            for (Product product : products) {
+                if (product.getId() != null && product.getPrice() != null) {
+                    ordinals.put(product.getId(), productsByOrdinal.size());
+                    indexedPrices.put(product.getId(), product.getPrice());
+                    productsByOrdinal.add(product);
+                }
+            }
+
+            // Sort once instead of inserting one by one
+            Integer[] order = new Integer[productsByOrdinal.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (o1, o2) -> compare(productsByOrdinal.get(o1), productsByOrdinal.get(o2)));
+
+            size = order.length;
+            prices = new double[Math.max(size, 16)];
+            ordinalsByPosition = new int[prices.length];
+            for (int position = 0; position < size; position++) {
+                ordinalsByPosition[position] = order[position];
+                prices[position] = productsByOrdinal.get(order[position]).getPrice();
+            }
+            log.info("Price index rebuilt with {} products", size);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onProductSaved(Product product) {
+        lock.writeLock().lock();
+        try {
+            removeProduct(product.getId());
+            addProduct(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onProductDeleted(String id) {
+        lock.writeLock().lock();
+        try {
+            removeProduct(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * All products priced within [minPrice, maxPrice], cheapest first
+     */
+    public List<Product> range(double minPrice, double maxPrice) {
+        lock.readLock().lock();
+        try {
+            int from = lowerBound(minPrice);
+            int to = upperBound(maxPrice);
+            List<Product> result = new ArrayList<>(Math.max(to - from, 0));
+            for (int position = from; position < to; position++) {
+                result.add(productsByOrdinal.get(ordinalsByPosition[position]));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Up to limit products priced within [minPrice, maxPrice] in (price, id) order,
+     * starting strictly after (afterPrice, afterId) when those are given
+     */
+    public List<Product> page(double minPrice, double maxPrice, boolean descending,
+                              Double afterPrice, String afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            int from = lowerBound(minPrice);
+            int to = upperBound(maxPrice);
+            if (afterPrice != null && afterId != null) {
+                int cursor = position(afterPrice, afterId);
+                if (descending) {
+                    to = Math.min(to, cursor);
+                } else {
+                    // Skip the cursor's own entry if it is still in the index
+                    boolean present = cursor < size && prices[cursor] == afterPrice
+                        && productsByOrdinal.get(ordinalsByPosition[cursor]).getId().equals(afterId);
+                    from = Math.max(from, present ? cursor + 1 : cursor);
+                }
+            }
+
+            List<Product> result = new ArrayList<>(Math.max(Math.min(limit, to - from), 0));
+            if (descending) {
+                for (int position = to - 1; position >= from && result.size() < limit; position--) {
+                    result.add(productsByOrdinal.get(ordinalsByPosition[position]));
+                }
+            } else {
+                for (int position = from; position < to && result.size() < limit; position++) {
+                    result.add(productsByOrdinal.get(ordinalsByPosition[position]));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int compare(Product p1, Product p2) {
+        int byPrice = Double.compare(p1.getPrice(), p2.getPrice());
+        return byPrice != 0 ? byPrice : p1.getId().compareTo(p2.getId());
+    }
+
+    /**
+     * First position whose price is at least the given one
+     */
+    private int lowerBound(double price) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prices[mid] < price) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * First position whose price is above the given one
+     */
+    private int upperBound(double price) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prices[mid] <= price) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * First position whose (price, id) is not below the given pair
+     */
+    private int position(double price, String id) {
+        int low = lowerBound(price);
+        int high = upperBound(price);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (productsByOrdinal.get(ordinalsByPosition[mid]).getId().compareTo(id) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void addProduct(Product product) {
+        if (product.getId() == null || product.getPrice() == null) {
+            return;
+        }
+
+        int ordinal;
+        if (freeOrdinals.isEmpty()) {
+            ordinal = productsByOrdinal.size();
+            productsByOrdinal.add(product);
+        } else {
+            ordinal = freeOrdinals.pop();
+            productsByOrdinal.set(ordinal, product);
+        }
+        ordinals.put(product.getId(), ordinal);
+        indexedPrices.put(product.getId(), product.getPrice());
+
+        if (size == prices.length) {
+            int capacity = Math.max(16, size * 2);
+            prices = Arrays.copyOf(prices, capacity);
+            ordinalsByPosition = Arrays.copyOf(ordinalsByPosition, capacity);
+        }
+        int at = position(product.getPrice(), product.getId());
+        System.arraycopy(prices, at, prices, at + 1, size - at);
+        System.arraycopy(ordinalsByPosition, at, ordinalsByPosition, at + 1, size - at);
+        prices[at] = product.getPrice();
+        ordinalsByPosition[at] = ordinal;
+        size++;
+    }
+
+    private void removeProduct(String id) {
+        Integer ordinal = ordinals.remove(id);
+        if (ordinal == null) {
+            return;
+        }
+
+        // Located by the price it was indexed under, in case the product object was changed since
+        int at = position(indexedPrices.remove(id), id);
+        productsByOrdinal.set(ordinal, null);
+        freeOrdinals.push(ordinal);
+        System.arraycopy(prices, at + 1, prices, at, size - at - 1);
+        System.arraycopy(ordinalsByPosition, at + 1, ordinalsByPosition, at, size - at - 1);
+        size--;
+    }
+}
@@ -1,88 +1,495 @@
 package com.cs353.ooadproj;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 /**
  * A proxy for ProductsRepository that caches frequently accessed products
  * Demonstrates the Proxy pattern for caching
+ *
+ * Single products live in a Caffeine cache bounded by estimated heap weight,
+ * with W-TinyLFU admission so one-off lookups cannot flush hot products,
+ * and expired entries are removed in the background by the system scheduler.
+ *
+ * Loads are single-flight: concurrent misses on the same product, or on the
+ * whole catalog, wait for one database read instead of each issuing their own.
+ * With refresh-ahead enabled, hot entries are reloaded in the background
+ * before they expire while readers keep being served the current value.
+ *
+ * The whole catalog is held as an immutable CatalogSnapshot. Writes publish a
+ * new snapshot with just the changed product replaced instead of throwing the
+ * catalog away, so readers never block and never see a half-applied update.
  */
 @Component
 @Slf4j
 public class ProductRepositoryProxy {
     private final ProductsRepository productsRepository;
-    private final Map<String, CachedProduct> cache = new HashMap<>();
-    private List<Product> allProducts = null;
-    private long allProductsTimestamp = 0;
-    private static final long CACHE_EXPIRY_MS = TimeUnit.MINUTES.toMillis(10);
-    
-    private static class CachedProduct {
-        final Product product;
-        final long timestamp;
+    private final ProductSearchIndex searchIndex;
+    private final ProductCategoryIndex categoryIndex;
+    private final ProductSummaryCache summaryCache;
+    private final ProductLeaderboard leaderboard;
+    private final ProductSuggestIndex suggestIndex;
+    private final ProductPriceIndex priceIndex;
+    private final List<CatalogListener> listeners;
+    private final LoadingCache<String, Product> cache;
+    private final long cacheExpiryMs;
+    private final long refreshAheadMs;
+    private final AtomicReference<CatalogSnapshot> snapshot = new AtomicReference<>();
+    // The catalog load currently in flight, shared by every caller that misses meanwhile
+    private final AtomicReference<CompletableFuture<CatalogSnapshot>> catalogLoad = new AtomicReference<>();
+    // Orders publishing a loaded catalog against patching single products, so a full
+    // rebuild of the indexes can never land on top of a newer incremental update
+    private final Object catalogWriteLock = new Object();
+    // Products written while a catalog load is in flight, null for deleted ones, replayed
+    // onto the loaded catalog before it is published; guarded by catalogWriteLock
+    private Map<String, Product> writesDuringLoad;
+    private volatile boolean indexesLoaded = false;
+    // Columnar copy of the current snapshot for facet counts, rebuilt when the snapshot changes
+    private volatile CatalogColumns columns;
+    // Distinguishes versions handed out by this process from those of an earlier run
+    private final String instanceId = Long.toString(System.currentTimeMillis(), 36);
+    private static final int MAX_PAGE_SIZE = 100;
+    
+    @Autowired
+    public ProductRepositoryProxy(ProductsRepository productsRepository, ProductSearchIndex searchIndex,
+                                  ProductCategoryIndex categoryIndex, ProductSummaryCache summaryCache,
+                                  ProductLeaderboard leaderboard, ProductSuggestIndex suggestIndex,
+                                  ProductPriceIndex priceIndex,
+                                  @Value("${catalog.cache.max-weight-bytes:67108864}") long maxWeightBytes,
+                                  @Value("${catalog.cache.expiry-minutes:10}") long expiryMinutes,
+                                  @Value("${catalog.cache.refresh-ahead-minutes:0}") long refreshAheadMinutes) {
+        this.productsRepository = productsRepository;
+        this.searchIndex = searchIndex;
+        this.categoryIndex = categoryIndex;
+        this.summaryCache = summaryCache;
+        this.leaderboard = leaderboard;
+        this.suggestIndex = suggestIndex;
+        this.priceIndex = priceIndex;
+        this.listeners = List.of(searchIndex, categoryIndex, summaryCache, leaderboard, suggestIndex, priceIndex);
+        this.cacheExpiryMs = TimeUnit.MINUTES.toMillis(expiryMinutes);
+        // Refresh-ahead only makes sense when it fires before expiry
+        this.refreshAheadMs = refreshAheadMinutes > 0 && refreshAheadMinutes < expiryMinutes
+            ? TimeUnit.MINUTES.toMillis(refreshAheadMinutes) : 0;
         
-        CachedProduct(Product product) {
-            this.product = product;
-            this.timestamp = System.currentTimeMillis();
+        Caffeine<String, Product> builder = Caffeine.newBuilder()
+            .maximumWeight(maxWeightBytes)
+            .weigher(new ProductWeigher())
+            .expireAfterWrite(expiryMinutes, TimeUnit.MINUTES)
+            .scheduler(Scheduler.systemScheduler())
+            .recordStats();
+        if (refreshAheadMs > 0) {
+            builder.refreshAfterWrite(refreshAheadMinutes, TimeUnit.MINUTES);
+        }
+        // A null result means "not found" and is not cached
+        this.cache = builder.build(id -> {
+            log.info("Loading product ID: {}", id);
+            return productsRepository.findById(id).orElse(null);
+        });
+    }
+    
+    public List<Product> findAll() {
+        return currentSnapshot().products();
+    }
+    
+    /**
+     * The current catalog snapshot, loading it first if it is missing or expired
+     */
+    private CatalogSnapshot currentSnapshot() {
+        CatalogSnapshot catalog = snapshot.get();
+        if (catalog == null || catalog.isOlderThan(cacheExpiryMs)) {
+            log.info("Cache miss for all products");
+            return loadCatalog();
         }
         
-        boolean isExpired() {
-            return System.currentTimeMillis() - timestamp > CACHE_EXPIRY_MS;
+        log.info("Serving all products from cache");
+        if (refreshAheadMs > 0 && catalog.isOlderThan(refreshAheadMs) && catalogLoad.get() == null) {
+            log.info("Refreshing all products ahead of expiry");
+            CompletableFuture.runAsync(this::loadCatalog).exceptionally(e -> {
+                log.error("Background catalog refresh failed: {}", e.getMessage(), e);
+                return null;
+            });
         }
+        return catalog;
     }
     
-    @Autowired
-    public ProductRepositoryProxy(ProductsRepository productsRepository) {
-        this.productsRepository = productsRepository;
+    /**
+     * Load the whole catalog once, no matter how many callers miss at the same time
+     */
+    private CatalogSnapshot loadCatalog() {
+        CompletableFuture<CatalogSnapshot> flight = new CompletableFuture<>();
+        CompletableFuture<CatalogSnapshot> inFlight = catalogLoad.compareAndExchange(null, flight);
+        if (inFlight != null) {
+            log.info("Waiting for in-flight catalog load");
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        
+        try {
+            synchronized (catalogWriteLock) {
+                writesDuringLoad = new HashMap<>();
+            }
+            List<Product> products = productsRepository.findAll();
+            CatalogSnapshot loaded;
+            synchronized (catalogWriteLock) {
+                // Writes that landed during the load may be missing from it, so apply them on top;
+                // versioned after whatever the writes published, so no two states share a version
+                List<Product> current = replayWrites(products, writesDuringLoad);
+                writesDuringLoad = null;
+                CatalogSnapshot previous = snapshot.get();
+                long version = previous == null ? 1 : previous.getVersion() + 1;
+                loaded = CatalogSnapshot.of(current, version, previous);
+                listeners.forEach(listener -> listener.onCatalogLoaded(loaded.products()));
+                indexesLoaded = true;
+                snapshot.set(loaded);
+            }
+            // Cleared before the waiters are released, so anyone loading after them starts a new read
+            catalogLoad.set(null);
+            flight.complete(loaded);
+            return loaded;
+        } catch (RuntimeException e) {
+            synchronized (catalogWriteLock) {
+                writesDuringLoad = null;
+            }
+            catalogLoad.set(null);
+            flight.completeExceptionally(e);
+            throw e;
+        }
     }
     
-    public List<Product> findAll() {
-        long now = System.currentTimeMillis();
-        if (allProducts == null || now - allProductsTimestamp > CACHE_EXPIRY_MS) {
-            log.info("Cache miss for all products");
-            allProducts = productsRepository.findAll();
-            allProductsTimestamp = now;
-        } else {
-            log.info("Serving all products from cache");
+    private static List<Product> replayWrites(List<Product> loaded, Map<String, Product> writes) {
+        if (writes.isEmpty()) {
+            return loaded;
+        }
+        List<Product> result = new ArrayList<>(loaded.size() + writes.size());
+        for (Product product : loaded) {
+            if (!writes.containsKey(product.getId())) {
+                result.add(product);
+            }
+        }
+        for (Product written : writes.values()) {
+            if (written != null) {
+                result.add(written);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Remember a write for the catalog load in flight, if any; called with catalogWriteLock held
+     */
+    private void recordWrite(String id, Product product) {
+        if (writesDuringLoad != null) {
+            writesDuringLoad.put(id, product);
         }
-        return allProducts;
     }
     
     public Optional<Product> findById(String id) {
-        CachedProduct cachedProduct = cache.get(id);
-        if (cachedProduct != null && !cachedProduct.isExpired()) {
-            log.info("Cache hit for product ID: {}", id);
-            return Optional.of(cachedProduct.product);
+        CatalogSnapshot catalog = snapshot.get();
+        if (catalog != null && !catalog.isOlderThan(cacheExpiryMs)) {
+            Product product = catalog.get(id);
+            if (product != null) {
+                return Optional.of(product);
+            }
         }
-        
-        log.info("Cache miss for product ID: {}", id);
-        Optional<Product> productOpt = productsRepository.findById(id);
-        
-        productOpt.ifPresent(product -> 
-            cache.put(id, new CachedProduct(product))
-        );
-        
-        return productOpt;
+        // Concurrent misses on the same id share a single repository call
+        return Optional.ofNullable(cache.get(id));
     }
     
     public Product save(Product product) {
         Product savedProduct = productsRepository.save(product);
-        // Update cache
-        cache.put(savedProduct.getId(), new CachedProduct(savedProduct));
-        // Invalidate all products cache
-        allProducts = null;
+        applySaved(savedProduct);
         return savedProduct;
     }
     
     public void deleteById(String id) {
         productsRepository.deleteById(id);
-        cache.remove(id);
-        allProducts = null;
+        synchronized (catalogWriteLock) {
+            recordWrite(id, null);
+            cache.invalidate(id);
+            listeners.forEach(listener -> listener.onProductDeleted(id));
+            snapshot.updateAndGet(catalog -> catalog == null ? null : catalog.without(id));
+        }
+    }
+    
+    /**
+     * Update the cache and swap in a catalog snapshot with just this product
+     * replaced, after it has been written to the database. The snapshot goes last:
+     * its version keys ETags and cached response bodies, so it must not be seen
+     * before the indexes those bodies are rendered from are current.
+     */
+    private void applySaved(Product savedProduct) {
+        synchronized (catalogWriteLock) {
+            recordWrite(savedProduct.getId(), savedProduct);
+            cache.put(savedProduct.getId(), savedProduct);
+            listeners.forEach(listener -> listener.onProductSaved(savedProduct));
+            snapshot.updateAndGet(catalog -> catalog == null ? null : catalog.with(savedProduct));
+        }
+    }
+    
+    /**
+     * Reload the catalog and rebuild every index once, after writes that went
+     * around save and deleteById, such as a bulk import
+     */
+    public void reloadCatalog() {
+        cache.invalidateAll();
+        // A load already in flight may have read the catalog before those writes, so
+        // let it finish; any load after it starts later and sees them, and is always published
+        CompletableFuture<CatalogSnapshot> inFlight = catalogLoad.get();
+        if (inFlight != null) {
+            inFlight.exceptionally(e -> null).join();
+        }
+        loadCatalog();
+    }
+    
+    /**
+     * Monotonically increasing version of the catalog, bumped by every product write
+     */
+    public long getCatalogVersion() {
+        return currentSnapshot().getVersion();
+    }
+    
+    /**
+     * Catalog version at which the product was last written, or -1 when the
+     * catalog is not loaded or does not contain it
+     */
+    public long getProductVersion(String id) {
+        CatalogSnapshot catalog = snapshot.get();
+        return catalog == null || catalog.isOlderThan(cacheExpiryMs) ? -1 : catalog.versionOf(id);
+    }
+    
+    public String getInstanceId() {
+        return instanceId;
+    }
+    
+    /**
+     * Summaries of the whole catalog, served from the summary cache region
+     */
+    public List<ProductSummary> findAllSummaries() {
+        return summaryCache.summariesOf(currentSnapshot());
+    }
+    
+    /**
+     * Append a review with a single atomic update and patch the cached copies of
+     * just that product, instead of rewriting the whole document
+     */
+    public Optional<Product> appendReview(String id, Review review) {
+        Product updatedProduct = productsRepository.appendReview(id, review);
+        if (updatedProduct == null) {
+            return Optional.empty();
+        }
+        
+        synchronized (catalogWriteLock) {
+            // Concurrent reviews return in any order; each adds one to the count, so
+            // a copy with fewer reviews than the cached one is older and is skipped
+            Product current = cachedCopy(id);
+            if (current != null && reviewCount(current) > reviewCount(updatedProduct)) {
+                log.info("Skipping patch of product {} older than its cached copy", id);
+            } else {
+                applySaved(updatedProduct);
+            }
+        }
+        return Optional.of(updatedProduct);
+    }
+    
+    private Product cachedCopy(String id) {
+        CatalogSnapshot catalog = snapshot.get();
+        Product product = catalog == null ? null : catalog.get(id);
+        return product != null ? product : cache.getIfPresent(id);
+    }
+    
+    private static int reviewCount(Product product) {
+        return product.getRatingSummary() == null ? 0 : product.getRatingSummary().getCount();
+    }
+    
+    /**
+     * Add sold quantities to the products' sales counts and to the best-seller
+     * rankings, so they follow orders as they are placed. Sales counts are not part
+     * of the summaries listings are built from, so this is not a catalog write: the
+     * cached products keep their loaded sales count until the next catalog load,
+     * and the catalog version, with every ETag and cached response keyed by it, stays.
+     */
+    public void recordSales(Map<String, Integer> quantitiesByProductId) {
+        if (quantitiesByProductId.isEmpty()) {
+            return;
+        }
+        
+        productsRepository.incrementSales(quantitiesByProductId);
+        leaderboard.addSales(quantitiesByProductId);
+    }
+    
+    /**
+     * Top k products by rating or sales, served from the live leaderboards
+     */
+    public List<ProductSummary> findTop(String category, ProductLeaderboard.Ranking ranking, int k) {
+        ensureIndexesLoaded();
+        return summaryCache.summariesOf(leaderboard.top(category, ranking, k));
+    }
+    
+    /**
+     * Hit/miss/eviction counters and current weight of the product cache, for sizing it
+     */
+    public Map<String, Object> cacheStats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("entries", cache.estimatedSize());
+        cache.policy().eviction().ifPresent(eviction -> {
+            result.put("weightBytes", eviction.weightedSize().orElse(0));
+            result.put("maxWeightBytes", eviction.getMaximum());
+        });
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        result.put("evictedWeightBytes", stats.evictionWeight());
+        result.put("loads", stats.loadCount());
+        result.put("averageLoadPenaltyNanos", stats.averageLoadPenalty());
+        return result;
+    }
+    
+    /**
+     * Keyset-paginated listing backed by the (sort key, _id) indexes.
+     * Pages are read with a summary projection and are not cached: a page read
+     * before a write could otherwise overwrite the summary of that write.
+     * Pages restricted to a price range are served from the in-memory price index.
+     */
+    public ProductPage findPage(ProductSort sort, boolean descending, String cursor, int limit,
+                                Double minPrice, Double maxPrice) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        ProductCursor after = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            after = ProductCursor.decode(cursor);
+            if (after.getSort() != sort || after.isDescending() != descending) {
+                throw new IllegalArgumentException("Cursor was issued for a different sort order");
+            }
+        }
+        
+        // Fetch one extra row to find out whether another page exists
+        List<ProductSummary> rows;
+        if (minPrice != null || maxPrice != null) {
+            double min = minPrice == null ? Double.NEGATIVE_INFINITY : minPrice;
+            double max = maxPrice == null ? Double.POSITIVE_INFINITY : maxPrice;
+            if (min > max) {
+                throw new IllegalArgumentException("minPrice must not be greater than maxPrice");
+            }
+            rows = findPriceRangeRows(sort, descending, after, pageSize + 1, min, max);
+        } else {
+            rows = productsRepository.findPage(sort, descending, after, pageSize + 1);
+        }
+        boolean hasMore = rows.size() > pageSize;
+        List<ProductSummary> items = hasMore ? rows.subList(0, pageSize) : rows;
+        
+        String nextCursor = hasMore
+            ? ProductCursor.after(items.get(items.size() - 1), sort, descending).encode()
+            : null;
+        return new ProductPage(new ArrayList<>(items), nextCursor);
+    }
+    
+    /**
+     * Rows of a price-range page: a slice of the price index when sorting by price,
+     * otherwise the range's products sorted by the requested key
+     */
+    private List<ProductSummary> findPriceRangeRows(ProductSort sort, boolean descending, ProductCursor after,
+                                                    int limit, double minPrice, double maxPrice) {
+        ensureIndexesLoaded();
+        if (sort == ProductSort.PRICE) {
+            Double afterPrice = after == null ? null : (Double) after.getLastValue();
+            String afterId = after == null ? null : after.getLastId();
+            return summaryCache.summariesOf(priceIndex.page(minPrice, maxPrice, descending, afterPrice, afterId, limit));
+        }
+        
+        int direction = descending ? -1 : 1;
+        return summaryCache.summariesOf(priceIndex.range(minPrice, maxPrice)).stream()
+            .filter(summary -> after == null || direction * sort.compare(sort.valueOf(summary), summary.getId(),
+                after.getLastValue(), after.getLastId()) > 0)
+            .sorted((s1, s2) -> direction * sort.compare(sort.valueOf(s1), s1.getId(), sort.valueOf(s2), s2.getId()))
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+    
+    /**
+     * Full-text search served from the inverted index instead of scanning the catalog
+     */
+    public List<ProductSummary> search(String query) {
+        ensureIndexesLoaded();
+        return summaryCache.summariesOf(searchIndex.search(query));
+    }
+    
+    /**
+     * Search-as-you-type completions served from the suggest trie
+     */
+    public List<String> suggest(String prefix, int limit) {
+        ensureIndexesLoaded();
+        return suggestIndex.suggest(prefix, limit);
+    }
+    
+    /**
+     * Facet counts for the products matching the query and/or tags, or for the whole
+     * catalog when neither is given, counted over the columnar copy of the snapshot
+     */
+    public ProductFacets findFacets(String query, List<String> tags, boolean matchAll) {
+        CatalogSnapshot catalog = currentSnapshot();
+        CatalogColumns current = columns;
+        if (current == null || current.getSnapshot() != catalog) {
+            current = CatalogColumns.of(catalog);
+            columns = current;
+        }
+        
+        boolean hasQuery = query != null && !query.isBlank();
+        boolean hasTags = tags != null && !tags.isEmpty();
+        if (!hasQuery && !hasTags) {
+            return current.facets(current.allRows());
+        }
+        
+        ensureIndexesLoaded();
+        if (!hasTags) {
+            return current.facets(current.rowsOf(searchIndex.search(query)));
+        }
+        int[] rows = current.rowsOf(categoryIndex.findByTags(tags, matchAll));
+        if (hasQuery) {
+            BitSet matches = new BitSet();
+            for (int row : current.rowsOf(searchIndex.search(query))) {
+                matches.set(row);
+            }
+            rows = Arrays.stream(rows).filter(matches::get).toArray();
+        }
+        return current.facets(rows);
+    }
+    
+    /**
+     * Tag lookup served from the category bitmap index
+     */
+    public List<ProductSummary> findByTags(List<String> tags, boolean matchAll) {
+        ensureIndexesLoaded();
+        return summaryCache.summariesOf(categoryIndex.findByTags(tags, matchAll));
+    }
+    
+    private void ensureIndexesLoaded() {
+        // Indexes are kept current by save/deleteById, so only the first query loads the catalog
+        if (!indexesLoaded) {
+            findAll();
+        }
     }
 }
@@ -0,0 +1,214 @@
+package com.cs353.ooadproj;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over product titles and descriptions
+ * Maps every term to a posting list of product ids so searches never scan the catalog
+ * Query terms that match nothing fall back to indexed terms a typo or two away
+ */
+@Component
+@Slf4j
+public class ProductSearchIndex implements CatalogListener {
+    private static final int TITLE_WEIGHT = 3;
+    private static final int DESCRIPTION_WEIGHT = 1;
+    // Relative weight of a term reached by correcting a typo, divided by the edit distance
+    private static final double FUZZY_BOOST = 0.4;
+
+    // term -> (product id -> weighted term frequency)
+    private final NavigableMap<String, Map<String, Integer>> postings = new TreeMap<>();
+    private final Map<String, Product> documents = new HashMap<>();
+    private final Map<String, Set<String>> documentTerms = new HashMap<>();
+    private final TermTrigramIndex trigramIndex = new TermTrigramIndex();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private static final class Hit {
+        final Product product;
+        double score;
+        int matchedTerms;
+        int lastQueryTerm = -1;
+
+        Hit(Product product) {
+            this.product = product;
+        }
+    }
+
+    /**
+     * Split text into lowercase alphanumeric terms
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    @Override
+    public void onCatalogLoaded(List<Product> products) {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documents.clear();
+            documentTerms.clear();
+            trigramIndex.clear();
+            for (Product product : products) {
+                addDocument(product);
+            }
+            log.info("Search index rebuilt with {} products and {} terms", documents.size(), postings.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onProductSaved(Product product) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(product.getId());
+            addDocument(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onProductDeleted(String id) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find products containing every query term, best matches first.
+     * Each query term also matches longer index terms it is a prefix of,
+     * so partially typed words still find results, and a term matching
+     * nothing is replaced by the indexed terms within a small edit distance.
+     */
+    public List<Product> search(String query) {
+        List<String> queryTerms = tokenize(query);
+        if (queryTerms.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            Map<String, Hit> hits = new HashMap<>();
+            int documentCount = Math.max(documents.size(), 1);
+
+            for (int i = 0; i < queryTerms.size(); i++) {
+                String queryTerm = queryTerms.get(i);
+                Map<String, Map<String, Integer>> matchingTerms
+                    = postings.subMap(queryTerm, true, queryTerm + Character.MAX_VALUE, false);
+                for (Map.Entry<String, Map<String, Integer>> entry : matchingTerms.entrySet()) {
+                    // Exact term matches outrank prefix expansions
+                    double boost = entry.getKey().length() == queryTerm.length() ? 1.0 : 0.5;
+                    score(hits, entry.getValue(), i, boost, documentCount);
+                }
+
+                if (matchingTerms.isEmpty()) {
+                    for (TermTrigramIndex.Match match : trigramIndex.similarTerms(queryTerm)) {
+                        score(hits, postings.get(match.term), i, FUZZY_BOOST / match.distance, documentCount);
+                    }
+                }
+            }
+
+            List<Hit> matches = new ArrayList<>();
+            for (Hit hit : hits.values()) {
+                if (hit.matchedTerms == queryTerms.size()) {
+                    matches.add(hit);
+                }
+            }
+            matches.sort((h1, h2) -> Double.compare(h2.score, h1.score));
+
+            List<Product> results = new ArrayList<>(matches.size());
+            for (Hit hit : matches) {
+                results.add(hit.product);
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void score(Map<String, Hit> hits, Map<String, Integer> posting, int queryTerm,
+                       double boost, int documentCount) {
+        double idf = Math.log(1.0 + (double) documentCount / posting.size());
+        for (Map.Entry<String, Integer> doc : posting.entrySet()) {
+            Hit hit = hits.computeIfAbsent(doc.getKey(), id -> new Hit(documents.get(id)));
+            hit.score += doc.getValue() * idf * boost;
+            if (hit.lastQueryTerm != queryTerm) {
+                hit.lastQueryTerm = queryTerm;
+                hit.matchedTerms++;
+            }
+        }
+    }
+
+    private void addDocument(Product product) {
+        if (product.getId() == null) {
+            return;
+        }
+
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String term : tokenize(product.getTitle())) {
+            frequencies.merge(term, TITLE_WEIGHT, Integer::sum);
+        }
+        for (String term : tokenize(product.getDescription())) {
+            frequencies.merge(term, DESCRIPTION_WEIGHT, Integer::sum);
+        }
+
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), term -> {
+                trigramIndex.add(term);
+                return new HashMap<>();
+            }).put(product.getId(), entry.getValue());
+        }
+        documents.put(product.getId(), product);
+        documentTerms.put(product.getId(), frequencies.keySet());
+    }
+
+    private void removeDocument(String id) {
+        Set<String> terms = documentTerms.remove(id);
+        documents.remove(id);
+        if (terms == null) {
+            return;
+        }
+
+        for (String term : terms) {
+            Map<String, Integer> posting = postings.get(term);
+            if (posting != null) {
+                posting.remove(id);
+                if (posting.isEmpty()) {
+                    postings.remove(term);
+                    trigramIndex.remove(term);
+                }
+            }
+        }
+    }
+}
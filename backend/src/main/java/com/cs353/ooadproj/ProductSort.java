@@ -0,0 +1,61 @@
+package com.cs353.ooadproj;
+
+/**
+ * Sort keys supported by the paginated product listing
+ */
+public enum ProductSort {
+    PRICE("price"),
+    TITLE("title"),
+    RATING("averageRating");
+
+    private final String field;
+
+    ProductSort(String field) {
+        this.field = field;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * Resolve a sort key from a request parameter such as "price" or "rating"
+     */
+    public static ProductSort fromParam(String param) {
+        for (ProductSort sort : values()) {
+            if (sort.name().equalsIgnoreCase(param)) {
+                return sort;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported sort key: " + param);
+    }
+
+    /**
+     * Read this sort key's value from a product summary
+     */
+    public Object valueOf(ProductSummary product) {
+        switch (this) {
+            case PRICE:
+                return product.getPrice();
+            case RATING:
+                return product.getAverageRating();
+            default:
+                return product.getTitle();
+        }
+    }
+
+    /**
+     * Compare two (value, id) positions in ascending order of this key, then of id,
+     * with missing values first as Mongo sorts them
+     */
+    @SuppressWarnings("unchecked")
+    public int compare(Object value1, String id1, Object value2, String id2) {
+        int byValue;
+        if (value1 == null || value2 == null) {
+            byValue = value1 == null ? (value2 == null ? 0 : -1) : 1;
+        } else {
+            byValue = ((Comparable<Object>) value1).compareTo(value2);
+        }
+        return byValue != 0 ? byValue : id1.compareTo(id2);
+    }
+}
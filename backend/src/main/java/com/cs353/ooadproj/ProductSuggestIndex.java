@@ -0,0 +1,474 @@
+package com.cs353.ooadproj;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory radix trie over product titles and tags for search-as-you-type
+ *
+ * Every node keeps its best TOP_N suggestions precomputed, so a lookup is one
+ * walk down the prefix and a copy of that list, independent of catalog size.
+ * Titles are reachable from the start of each of their words, and keys are cut
+ * at MAX_KEY_LENGTH characters.
+ *
+ * Chains of single children are collapsed, and a node refers to its path as a
+ * range of the normalized text of a suggestion instead of holding labels, so a
+ * trie with k keys has at most 2k nodes. Each key costs at most one leaf of about
+ * 50 bytes and one branching node of about 120 bytes including its top list; with
+ * the suggestion and its bookkeeping a six-word title takes about 1 KB, so about
+ * 1 GB per million such titles.
+ */
+@Component
+@Slf4j
+public class ProductSuggestIndex implements CatalogListener {
+    public static final int TOP_N = 10;
+    private static final int MAX_KEY_LENGTH = 32;
+    private static final Suggestion[] NONE = new Suggestion[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private Node root = new Node("", 0, 0);
+    // normalized text -> suggestion, shared by every product contributing it
+    private final Map<String, Suggestion> suggestions = new HashMap<>();
+    // product id -> suggestion weights it contributed, so it can be taken back out
+    private final Map<String, Map<Suggestion, Long>> contributions = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private static final class Suggestion {
+        final String text;
+        final String normalized;
+        // Offsets in the normalized text where its keys start
+        final int[] keyStarts;
+        long weight;
+
+        Suggestion(String text, String normalized, int[] keyStarts) {
+            this.text = text;
+            this.normalized = normalized;
+            this.keyStarts = keyStarts;
+        }
+
+        int keyEnd(int keyStart) {
+            return Math.min(normalized.length(), keyStart + MAX_KEY_LENGTH);
+        }
+    }
+
+    private static final class Node {
+        // The path from the root to this node is text[start, end), where text is
+        // the normalized text of any suggestion with a key through this node
+        final String text;
+        final int start;
+        final int end;
+        // Children sorted by the first character of their edge, searched with binary search
+        Node[] children = NO_CHILDREN;
+        // Suggestions whose key ends exactly here
+        Suggestion[] terminals = NONE;
+        // Best suggestions in this subtree, heaviest first
+        Suggestion[] top = NONE;
+
+        Node(String text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+
+        int depth() {
+            return end - start;
+        }
+
+        char charAt(int depth) {
+            return text.charAt(start + depth);
+        }
+
+        /**
+         * Index of the child whose edge starts with the label, or (-insertion point - 1)
+         */
+        int indexOf(char label) {
+            int depth = depth();
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char midLabel = children[mid].charAt(depth);
+                if (midLabel < label) {
+                    low = mid + 1;
+                } else if (midLabel > label) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        Node child(char label) {
+            int i = indexOf(label);
+            return i < 0 ? null : children[i];
+        }
+
+        void insertChild(int at, Node child) {
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(children, 0, newChildren, 0, at);
+            System.arraycopy(children, at, newChildren, at + 1, children.length - at);
+            newChildren[at] = child;
+            children = newChildren;
+        }
+
+        void removeChild(int i) {
+            if (children.length == 1) {
+                children = NO_CHILDREN;
+                return;
+            }
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(children, i + 1, newChildren, i, children.length - i - 1);
+            children = newChildren;
+        }
+    }
+
+    /**
+     * Normalize text into the form keys are stored and looked up in
+     */
+    static String normalize(String text) {
+        return String.join(" ", ProductSearchIndex.tokenize(text));
+    }
+
+    @Override
+    public void onCatalogLoaded(List<Product> products) {
+        lock.writeLock().lock();
+        try {
+            root = new Node("", 0, 0);
+            suggestions.clear();
+            contributions.clear();
+            for (Product product : products) {
+                addProduct(product, false);
+            }
+            // One bottom-up pass instead of recomputing the paths of every product
+            rebuildTop(root);
+            log.info("Suggest index rebuilt with {} products and {} suggestions", contributions.size(), suggestions.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onProductSaved(Product product) {
+        lock.writeLock().lock();
+        try {
+            removeProduct(product.getId());
+            addProduct(product, true);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onProductDeleted(String id) {
+        lock.writeLock().lock();
+        try {
+            removeProduct(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Titles and tags starting with the given prefix, or with a word starting with it, best first
+     */
+    public List<String> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // Keys are only stored up to MAX_KEY_LENGTH
+        key = key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key;
+
+        lock.readLock().lock();
+        try {
+            // The first node at or below the prefix holds everything starting with it
+            Node node = root;
+            while (node.depth() < key.length()) {
+                node = node.child(key.charAt(node.depth()));
+                if (node == null || !matchesEdge(node, key)) {
+                    return Collections.emptyList();
+                }
+            }
+
+            int count = Math.min(limit, node.top.length);
+            List<String> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                result.add(node.top[i].text);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addProduct(Product product, boolean updateTop) {
+        if (product.getId() == null) {
+            return;
+        }
+
+        Map<Suggestion, Long> contributed = new LinkedHashMap<>();
+        // Best sellers come first among titles sharing a prefix
+        contribute(contributed, product.getTitle(), 1 + Math.max(product.getSalesCount(), 0), true);
+        if (product.getTags() != null) {
+            for (String tag : product.getTags()) {
+                contribute(contributed, tag, 1, false);
+            }
+        }
+        contributions.put(product.getId(), contributed);
+
+        for (Map.Entry<Suggestion, Long> entry : contributed.entrySet()) {
+            Suggestion suggestion = entry.getKey();
+            boolean isNew = suggestion.weight == 0;
+            suggestion.weight += entry.getValue();
+            if (isNew) {
+                for (int keyStart : suggestion.keyStarts) {
+                    Node node = insert(suggestion.normalized, keyStart, suggestion.keyEnd(keyStart));
+                    node.terminals = append(node.terminals, suggestion);
+                }
+            }
+            if (updateTop) {
+                for (int keyStart : suggestion.keyStarts) {
+                    updatePath(suggestion.normalized, keyStart, suggestion.keyEnd(keyStart));
+                }
+            }
+        }
+    }
+
+    private void contribute(Map<Suggestion, Long> contributed, String text, long weight, boolean wordStarts) {
+        String normalized = normalize(text);
+        if (normalized.isEmpty()) {
+            return;
+        }
+        Suggestion suggestion = suggestions.computeIfAbsent(normalized,
+            n -> new Suggestion(text.trim(), n, keyStartsOf(n, wordStarts)));
+        contributed.merge(suggestion, weight, Long::sum);
+    }
+
+    private static int[] keyStartsOf(String normalized, boolean wordStarts) {
+        int[] starts = new int[1];
+        int count = 1;
+        if (wordStarts) {
+            for (int i = normalized.indexOf(' '); i >= 0; i = normalized.indexOf(' ', i + 1)) {
+                if (!hasKey(normalized, starts, count, i + 1)) {
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, count * 2);
+                    }
+                    starts[count++] = i + 1;
+                }
+            }
+        }
+        return count == starts.length ? starts : Arrays.copyOf(starts, count);
+    }
+
+    /**
+     * Whether a key starting at one of the earlier offsets is the same as the one starting at start
+     */
+    private static boolean hasKey(String normalized, int[] starts, int count, int start) {
+        int length = Math.min(normalized.length() - start, MAX_KEY_LENGTH);
+        for (int i = 0; i < count; i++) {
+            int otherLength = Math.min(normalized.length() - starts[i], MAX_KEY_LENGTH);
+            if (otherLength == length && normalized.regionMatches(starts[i], normalized, start, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the edge into the node matches the key for as far as both go
+     */
+    private static boolean matchesEdge(Node node, String key) {
+        int length = Math.min(node.depth(), key.length());
+        return node.text.regionMatches(node.start, key, 0, length);
+    }
+
+    /**
+     * The node for the key text[keyStart, keyEnd), created along with any edge split it needs
+     */
+    private Node insert(String text, int keyStart, int keyEnd) {
+        int length = keyEnd - keyStart;
+        Node node = root;
+        while (node.depth() < length) {
+            int depth = node.depth();
+            int i = node.indexOf(text.charAt(keyStart + depth));
+            if (i < 0) {
+                Node leaf = new Node(text, keyStart, keyEnd);
+                node.insertChild(-i - 1, leaf);
+                return leaf;
+            }
+
+            Node child = node.children[i];
+            int matched = depth + 1;
+            while (matched < child.depth() && matched < length && child.charAt(matched) == text.charAt(keyStart + matched)) {
+                matched++;
+            }
+            if (matched < child.depth()) {
+                // The key leaves the edge part way, so split it there
+                Node split = new Node(text, keyStart, keyStart + matched);
+                split.children = new Node[] {child};
+                split.top = child.top;
+                node.children[i] = split;
+                child = split;
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    private void removeProduct(String id) {
+        Map<Suggestion, Long> contributed = contributions.remove(id);
+        if (contributed == null) {
+            return;
+        }
+
+        for (Map.Entry<Suggestion, Long> entry : contributed.entrySet()) {
+            Suggestion suggestion = entry.getKey();
+            suggestion.weight -= entry.getValue();
+            if (suggestion.weight <= 0) {
+                suggestions.remove(suggestion.normalized);
+                for (int keyStart : suggestion.keyStarts) {
+                    Node[] path = path(suggestion.normalized, keyStart, suggestion.keyEnd(keyStart));
+                    Node node = path[path.length - 1];
+                    node.terminals = remove(node.terminals, suggestion);
+                }
+            }
+            for (int keyStart : suggestion.keyStarts) {
+                updatePath(suggestion.normalized, keyStart, suggestion.keyEnd(keyStart));
+            }
+        }
+    }
+
+    /**
+     * Nodes from the root down towards the key text[keyStart, keyEnd), ending at
+     * the node for the key or at the last one on its way that exists
+     */
+    private Node[] path(String text, int keyStart, int keyEnd) {
+        int length = keyEnd - keyStart;
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        while (node.depth() < length) {
+            Node next = node.child(text.charAt(keyStart + node.depth()));
+            if (next == null || next.depth() > length
+                || !next.text.regionMatches(next.start, text, keyStart, next.depth())) {
+                break;
+            }
+            node = next;
+            path.add(node);
+        }
+        return path.toArray(new Node[0]);
+    }
+
+    /**
+     * Recompute the top lists from the end of the key back up to the root, pruning
+     * nodes that no longer lead to any suggestion and merging those left with one child
+     */
+    private void updatePath(String text, int keyStart, int keyEnd) {
+        Node[] path = path(text, keyStart, keyEnd);
+        for (int i = path.length - 1; i >= 0; i--) {
+            Node node = path[i];
+            if (i > 0 && node.terminals.length == 0 && node.children.length <= 1) {
+                Node parent = path[i - 1];
+                int at = parent.indexOf(node.charAt(parent.depth()));
+                if (node.children.length == 0) {
+                    parent.removeChild(at);
+                } else {
+                    // Its child already holds the whole path, so it can take its place
+                    parent.children[at] = node.children[0];
+                }
+                continue;
+            }
+            node.top = computeTop(node);
+        }
+    }
+
+    private static void rebuildTop(Node node) {
+        for (Node child : node.children) {
+            rebuildTop(child);
+        }
+        node.top = computeTop(node);
+    }
+
+    /**
+     * A node's best suggestions are the best of its own and of its children's top lists
+     */
+    private static Suggestion[] computeTop(Node node) {
+        if (node.children.length == 0 && node.terminals.length == 1) {
+            // Most nodes are leaves of one suggestion, which can share the array
+            return node.terminals;
+        }
+        Suggestion[] top = new Suggestion[TOP_N];
+        int size = 0;
+        for (Suggestion suggestion : node.terminals) {
+            size = offer(top, size, suggestion);
+        }
+        for (Node child : node.children) {
+            for (Suggestion suggestion : child.top) {
+                // Children are sorted heaviest first, so the rest cannot get in either
+                if (size == TOP_N && !isBetter(suggestion, top[TOP_N - 1])) {
+                    break;
+                }
+                size = offer(top, size, suggestion);
+            }
+        }
+        return size == TOP_N ? top : Arrays.copyOf(top, size);
+    }
+
+    private static int offer(Suggestion[] top, int size, Suggestion suggestion) {
+        // A title can reach the same node through several of its words
+        for (int i = 0; i < size; i++) {
+            if (top[i] == suggestion) {
+                return size;
+            }
+        }
+
+        int at = size;
+        while (at > 0 && isBetter(suggestion, top[at - 1])) {
+            at--;
+        }
+        if (at == top.length) {
+            return size;
+        }
+        int moved = Math.min(size, top.length - 1) - at;
+        System.arraycopy(top, at, top, at + 1, moved);
+        top[at] = suggestion;
+        return Math.min(size + 1, top.length);
+    }
+
+    private static boolean isBetter(Suggestion a, Suggestion b) {
+        if (a.weight != b.weight) {
+            return a.weight > b.weight;
+        }
+        return a.text.compareToIgnoreCase(b.text) < 0;
+    }
+
+    private static Suggestion[] append(Suggestion[] array, Suggestion suggestion) {
+        Suggestion[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = suggestion;
+        return result;
+    }
+
+    private static Suggestion[] remove(Suggestion[] array, Suggestion suggestion) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == suggestion) {
+                Suggestion[] result = new Suggestion[array.length - 1];
+                System.arraycopy(array, 0, result, 0, i);
+                System.arraycopy(array, i + 1, result, i, array.length - i - 1);
+                return result.length == 0 ? NONE : result;
+            }
+        }
+        return array;
+    }
+}
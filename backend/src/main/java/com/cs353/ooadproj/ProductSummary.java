@@ -0,0 +1,37 @@
+package com.cs353.ooadproj;
+
+import lombok.Data;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lightweight read model of a product for listing, search and category responses
+ * Carries only what a product card shows; the full Product is served by /products/{id}
+ */
+@Data
+public class ProductSummary {
+    private String id;
+    private String title;
+    private Double price;
+    // Only the first image, kept as a list so clients can read images[0] as before
+    private List<String> images;
+    private List<String> tags;
+    private double averageRating;
+    private int reviewCount;
+
+    public static ProductSummary from(Product product) {
+        ProductSummary summary = new ProductSummary();
+        summary.setId(product.getId());
+        summary.setTitle(product.getTitle());
+        summary.setPrice(product.getPrice());
+        List<String> images = product.getImages();
+        summary.setImages(images == null || images.isEmpty()
+            ? Collections.emptyList()
+            : Collections.singletonList(images.get(0)));
+        summary.setTags(product.getTags());
+        summary.setAverageRating(product.getAverageRating());
+        summary.setReviewCount(product.getRatingSummary() == null ? 0 : product.getRatingSummary().getCount());
+        return summary;
+    }
+}
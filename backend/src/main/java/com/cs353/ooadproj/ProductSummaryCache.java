@@ -0,0 +1,88 @@
+package com.cs353.ooadproj;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache region holding ProductSummary read models, separate from the full products
+ * Summaries are built once per product write and reused by every collection response
+ *
+ * Each summary remembers the Product instance it was built from and is only
+ * reused for that same instance, so a summary can never stand in for a newer
+ * copy of its product.
+ */
+@Component
+public class ProductSummaryCache implements CatalogListener {
+    private final Map<String, CachedSummary> summaries = new ConcurrentHashMap<>();
+    // Summaries of the whole catalog in snapshot order, for the snapshot they were built from
+    private volatile CatalogSummaries catalogSummaries;
+
+    private static class CachedSummary {
+        final Product product;
+        final ProductSummary summary;
+
+        CachedSummary(Product product) {
+            this.product = product;
+            this.summary = ProductSummary.from(product);
+        }
+    }
+
+    private static class CatalogSummaries {
+        final CatalogSnapshot snapshot;
+        final List<ProductSummary> summaries;
+
+        CatalogSummaries(CatalogSnapshot snapshot, List<ProductSummary> summaries) {
+            this.snapshot = snapshot;
+            this.summaries = summaries;
+        }
+    }
+
+    @Override
+    public void onCatalogLoaded(List<Product> products) {
+        summaries.clear();
+        for (Product product : products) {
+            summaries.put(product.getId(), new CachedSummary(product));
+        }
+    }
+
+    @Override
+    public void onProductSaved(Product product) {
+        summaries.put(product.getId(), new CachedSummary(product));
+    }
+
+    @Override
+    public void onProductDeleted(String id) {
+        summaries.remove(id);
+    }
+
+    public ProductSummary summaryOf(Product product) {
+        CachedSummary cached = summaries.get(product.getId());
+        return cached != null && cached.product == product ? cached.summary : ProductSummary.from(product);
+    }
+
+    public List<ProductSummary> summariesOf(List<Product> products) {
+        List<ProductSummary> result = new ArrayList<>(products.size());
+        for (Product product : products) {
+            result.add(summaryOf(product));
+        }
+        return result;
+    }
+
+    /**
+     * Summaries of every product in the snapshot, built at most once per snapshot
+     */
+    public List<ProductSummary> summariesOf(CatalogSnapshot snapshot) {
+        CatalogSummaries cached = catalogSummaries;
+        if (cached != null && cached.snapshot == snapshot) {
+            return cached.summaries;
+        }
+        List<ProductSummary> result = Collections.unmodifiableList(summariesOf(snapshot.products()));
+        catalogSummaries = new CatalogSummaries(snapshot, result);
+        return result;
+    }
+}
@@ -0,0 +1,60 @@
+package com.cs353.ooadproj;
+
+import com.github.benmanes.caffeine.cache.Weigher;
+
+import java.util.List;
+
+/**
+ * Estimates the heap footprint of a cached product in bytes
+ * Lets the product cache be bounded by memory rather than by entry count
+ */
+public class ProductWeigher implements Weigher<String, Product> {
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int REFERENCE_SIZE = 8;
+
+    @Override
+    public int weigh(String key, Product product) {
+        long bytes = estimateBytes(key) + estimate(product);
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Rough retained size of a product including its images, tags and reviews
+     */
+    public static long estimate(Product product) {
+        long bytes = OBJECT_OVERHEAD + 8 * REFERENCE_SIZE;
+        bytes += estimateBytes(product.getId());
+        bytes += estimateBytes(product.getTitle());
+        bytes += estimateBytes(product.getDescription());
+        bytes += estimateStrings(product.getImages());
+        bytes += estimateStrings(product.getTags());
+
+        List<Review> reviews = product.getReviews();
+        if (reviews != null) {
+            for (Review review : reviews) {
+                bytes += OBJECT_OVERHEAD + 5 * REFERENCE_SIZE;
+                bytes += estimateBytes(review.getUserId());
+                bytes += estimateBytes(review.getUsername());
+                bytes += estimateBytes(review.getReviewBody());
+                bytes += estimateBytes(review.getDate());
+            }
+        }
+        return bytes;
+    }
+
+    static long estimateBytes(String value) {
+        // String header plus backing array; Latin-1 strings take one byte per char
+        return value == null ? 0 : 2 * OBJECT_OVERHEAD + value.length();
+    }
+
+    private static long estimateStrings(List<String> values) {
+        if (values == null) {
+            return 0;
+        }
+        long bytes = OBJECT_OVERHEAD + (long) values.size() * REFERENCE_SIZE;
+        for (String value : values) {
+            bytes += estimateBytes(value);
+        }
+        return bytes;
+    }
+}
@@ -4,6 +4,6 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 
- interface ProductsRepository extends MongoRepository<Product, String> {
+ interface ProductsRepository extends MongoRepository<Product, String>, ProductsRepositoryCustom {
 
 }
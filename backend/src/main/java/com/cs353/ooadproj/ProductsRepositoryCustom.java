@@ -0,0 +1,27 @@
+package com.cs353.ooadproj;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Custom queries for products that cannot be expressed as derived repository methods
+ */
+interface ProductsRepositoryCustom {
+
+    /**
+     * Fetch the next page of product summaries ordered by (sort key, id), starting after the cursor.
+     * Only the fields a summary needs are read from the database.
+     */
+    List<ProductSummary> findPage(ProductSort sort, boolean descending, ProductCursor after, int limit);
+
+    /**
+     * Atomically embed a review in the recent-review preview and bump the rating summary.
+     * Returns the updated product, or null if no product has this id.
+     */
+    Product appendReview(String productId, Review review);
+
+    /**
+     * Atomically add the sold quantity to each product's sales count in one bulk write
+     */
+    void incrementSales(Map<String, Integer> quantitiesByProductId);
+}
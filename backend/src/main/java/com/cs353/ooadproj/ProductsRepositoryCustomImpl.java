@@ -0,0 +1,137 @@
+package com.cs353.ooadproj;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MongoTemplate-backed implementation of the custom product queries
+ */
+class ProductsRepositoryCustomImpl implements ProductsRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    ProductsRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public List<ProductSummary> findPage(ProductSort sort, boolean descending, ProductCursor after, int limit) {
+        String field = sort.getField();
+        Sort.Direction direction = descending ? Sort.Direction.DESC : Sort.Direction.ASC;
+        Query query = new Query()
+            .with(Sort.by(direction, field).and(Sort.by(direction, "id")))
+            .limit(limit);
+
+        if (after != null) {
+            query.addCriteria(keysetAfter(field, descending, after.getLastValue(), after.getLastId()));
+        }
+        // Skip descriptions, reviews and all but the first image
+        query.fields()
+            .include("title", "price", "tags", "averageRating", "ratingSummary.count")
+            .slice("images", 1);
+
+        List<Product> rows = mongoTemplate.find(query, Product.class);
+        List<ProductSummary> summaries = new ArrayList<>(rows.size());
+        for (Product row : rows) {
+            summaries.add(ProductSummary.from(row));
+        }
+        return summaries;
+    }
+
+    @Override
+    public Product appendReview(String productId, Review review) {
+        int rating = review.getRating();
+        Update update = new Update()
+            .inc("ratingSummary.count", 1)
+            .inc("ratingSummary.sum", rating)
+            .inc("ratingSummary.histogram." + (rating - 1), 1);
+        update.push("reviews").slice(-Product.RECENT_REVIEWS).each(review);
+
+        // Without the histogram array, $inc on an index would create an object in its place
+        Query withSummary = Query.query(Criteria.where("id").is(productId).and("ratingSummary.histogram").type(JsonSchemaObject.Type.ARRAY));
+        Product updated = mongoTemplate.findAndModify(withSummary, update,
+            FindAndModifyOptions.options().returnNew(true), Product.class);
+        if (updated == null) {
+            // Either no such product, or one not backfilled yet or saved without a summary
+            if (!initializeRatingSummary(productId)) {
+                return null;
+            }
+            updated = mongoTemplate.findAndModify(withSummary, update,
+                FindAndModifyOptions.options().returnNew(true), Product.class);
+            if (updated == null) {
+                return null;
+            }
+        }
+
+        // Only the writer that produced the current count may store the average, so
+        // concurrent reviews cannot leave an older average behind
+        RatingSummary summary = updated.getRatingSummary();
+        double average = summary.getAverage();
+        mongoTemplate.updateFirst(
+            Query.query(Criteria.where("id").is(productId).and("ratingSummary.count").is(summary.getCount())),
+            Update.update("averageRating", average),
+            Product.class);
+        updated.setAverageRating(average);
+        return updated;
+    }
+
+    @Override
+    public void incrementSales(Map<String, Integer> quantitiesByProductId) {
+        if (quantitiesByProductId.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        quantitiesByProductId.forEach((productId, quantity) -> bulk.updateOne(
+            Query.query(Criteria.where("id").is(productId)),
+            new Update().inc("salesCount", quantity)));
+        bulk.execute();
+    }
+
+    /**
+     * Give a product without a rating summary one computed from its embedded reviews,
+     * as the startup backfill would. Returns false if the product does not exist.
+     */
+    private boolean initializeRatingSummary(String productId) {
+        Product product = mongoTemplate.findById(productId, Product.class);
+        if (product == null) {
+            return false;
+        }
+        RatingSummary summary = RatingSummary.fromReviews(ReviewUtils.getReviewIterator(product));
+        // Conditional, so a summary set concurrently by another reviewer or the backfill is kept
+        mongoTemplate.updateFirst(
+            Query.query(Criteria.where("id").is(productId).and("ratingSummary.histogram").not().type(JsonSchemaObject.Type.ARRAY)),
+            Update.update("ratingSummary", summary).set("averageRating", summary.getAverage()),
+            Product.class);
+        return true;
+    }
+
+    /**
+     * Matches documents strictly after (value, id) in the given order.
+     * Missing values sort before everything else in Mongo, so they need their own branch.
+     */
+    private static Criteria keysetAfter(String field, boolean descending, Object value, String id) {
+        Criteria sameValue = descending
+            ? Criteria.where(field).is(value).and("id").lt(id)
+            : Criteria.where(field).is(value).and("id").gt(id);
+
+        if (value == null) {
+            return descending ? sameValue : new Criteria().orOperator(sameValue, Criteria.where(field).ne(null));
+        }
+
+        Criteria beyondValue = descending ? Criteria.where(field).lt(value) : Criteria.where(field).gt(value);
+        if (descending) {
+            return new Criteria().orOperator(beyondValue, sameValue, Criteria.where(field).is(null));
+        }
+        return new Criteria().orOperator(beyondValue, sameValue);
+    }
+}
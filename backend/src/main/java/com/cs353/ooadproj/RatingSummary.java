@@ -0,0 +1,51 @@
+package com.cs353.ooadproj;
+
+import lombok.Data;
+
+import java.util.Iterator;
+
+/**
+ * Denormalized rating aggregates stored on each product
+ * Kept up to date in O(1) per review so listings never walk the review list
+ */
+@Data
+public class RatingSummary {
+    public static final int MIN_RATING = 1;
+    public static final int MAX_RATING = 5;
+
+    private int count;
+    private long sum;
+    // histogram[i] is the number of (i + 1)-star reviews
+    private int[] histogram = new int[MAX_RATING];
+
+    public static boolean isValidRating(int rating) {
+        return rating >= MIN_RATING && rating <= MAX_RATING;
+    }
+
+    /**
+     * Build a summary by walking existing reviews, used to backfill older products
+     */
+    public static RatingSummary fromReviews(Iterator<Review> reviews) {
+        RatingSummary summary = new RatingSummary();
+        while (reviews.hasNext()) {
+            int rating = reviews.next().getRating();
+            if (isValidRating(rating)) {
+                summary.add(rating);
+            }
+        }
+        return summary;
+    }
+
+    public void add(int rating) {
+        if (!isValidRating(rating)) {
+            throw new IllegalArgumentException("Rating must be between " + MIN_RATING + " and " + MAX_RATING);
+        }
+        count++;
+        sum += rating;
+        histogram[rating - 1]++;
+    }
+
+    public double getAverage() {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+}
@@ -0,0 +1,146 @@
+package com.cs353.ooadproj;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache of already serialized and compressed JSON response bodies
+ *
+ * Keys include the catalog version, so an entry is valid for as long as the
+ * catalog it was rendered from; repeated reads of the same catalog state are
+ * written to the socket as bytes without walking objects or compressing again.
+ */
+@Component
+@Slf4j
+public class ResponseBodyCache {
+    private static final String GZIP = "gzip";
+
+    private final ObjectMapper objectMapper;
+    private final Cache<String, EncodedBody> cache;
+
+    private static class EncodedBody {
+        final byte[] identity;
+        final byte[] gzip;
+
+        EncodedBody(byte[] identity, byte[] gzip) {
+            this.identity = identity;
+            this.gzip = gzip;
+        }
+
+        int weight() {
+            return identity.length + gzip.length;
+        }
+    }
+
+    public ResponseBodyCache(ObjectMapper objectMapper,
+                             @Value("${catalog.response-cache.max-weight-bytes:33554432}") long maxWeightBytes) {
+        this.objectMapper = objectMapper;
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(maxWeightBytes)
+            .weigher((String key, EncodedBody body) -> body.weight())
+            // Entries of superseded catalog versions are never read again
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * Respond with the encoded body stored under the key, rendering it from the
+     * supplier on a miss. The key must change whenever the body would; callers
+     * set the ETag themselves when they check If-None-Match.
+     */
+    public ResponseEntity<byte[]> respond(String key, String acceptEncoding, Supplier<?> body) {
+        EncodedBody encoded = cache.get(key, k -> encode(body.get()));
+        boolean gzip = acceptsGzip(acceptEncoding);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, GZIP).body(encoded.gzip);
+        }
+        return response.body(encoded.identity);
+    }
+
+    /**
+     * Whether an Accept-Encoding header allows gzip: listed by name, or covered by *,
+     * with a non-zero q-value. An explicit gzip entry wins over *.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzipQuality = null;
+        Double wildcardQuality = null;
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.split(";");
+            String coding = parts[0].trim();
+            double quality = 1.0;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.regionMatches(true, 0, "q=", 0, 2)) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        // A malformed weight makes the entry unusable
+                        quality = 0;
+                    }
+                }
+            }
+            if (GZIP.equalsIgnoreCase(coding)) {
+                gzipQuality = quality;
+            } else if ("*".equals(coding)) {
+                wildcardQuality = quality;
+            }
+        }
+        if (gzipQuality != null) {
+            return gzipQuality > 0;
+        }
+        return wildcardQuality != null && wildcardQuality > 0;
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("entries", cache.estimatedSize());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        return result;
+    }
+
+    private EncodedBody encode(Object body) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(body);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(json);
+            }
+            log.info("Encoded response body: {} bytes, {} gzipped", json.length, compressed.size());
+            return new EncodedBody(json, compressed.toByteArray());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize response body", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compress response body", e);
+        }
+    }
+}
@@ -1,9 +1,22 @@
 package com.cs353.ooadproj;
 
 import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
 
 @Data
+@Document(collection = "reviews")
+// Backs the newest / highest / lowest orderings of GET /products/{id}/reviews
+@CompoundIndexes({
+    @CompoundIndex(name = "product_date", def = "{'productId': 1, 'date': -1}"),
+    @CompoundIndex(name = "product_rating_date", def = "{'productId': 1, 'rating': -1, 'date': -1}")
+})
 public class Review {
+    @Id
+    private String id;
+    private String productId;
     private String userId;
     private String username;
     private String reviewBody;
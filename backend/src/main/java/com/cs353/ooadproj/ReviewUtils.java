@@ -1,5 +1,10 @@
 package com.cs353.ooadproj;
 
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -27,8 +32,14 @@ public class ReviewUtils {
     
     /**
      * Calculate the average rating for a product
+     * Uses the stored rating summary when available and only walks the reviews otherwise
      */
     public static double getAverageRating(Product product) {
+        RatingSummary summary = product.getRatingSummary();
+        if (summary != null && summary.getCount() > 0) {
+            return summary.getAverage();
+        }
+        
         if (product.getReviews() == null || product.getReviews().isEmpty()) {
             return 0.0;
         }
@@ -44,4 +55,31 @@ public class ReviewUtils {
         
         return (double) sum / count;
     }
+    
+    /**
+     * Queue upserts that move a product's embedded reviews into the reviews collection.
+     * Reviews get ids derived from their position, so a move interrupted halfway can
+     * simply run again without duplicating anything.
+     */
+    static void moveToReviewsCollection(BulkOperations bulk, String productId, List<Review> reviews) {
+        for (int i = 0; i < reviews.size(); i++) {
+            Review review = reviews.get(i);
+            review.setId(productId + ":" + i);
+            review.setProductId(productId);
+            Update update = Update.update("productId", review.getProductId())
+                .set("userId", review.getUserId())
+                .set("username", review.getUsername())
+                .set("reviewBody", review.getReviewBody())
+                .set("rating", review.getRating())
+                .set("date", review.getDate());
+            bulk.upsert(Query.query(Criteria.where("id").is(review.getId())), update);
+        }
+    }
+    
+    /**
+     * The newest reviews, which are all a product keeps embedded
+     */
+    static List<Review> recentReviews(List<Review> reviews) {
+        return new ArrayList<>(reviews.subList(Math.max(0, reviews.size() - Product.RECENT_REVIEWS), reviews.size()));
+    }
 }
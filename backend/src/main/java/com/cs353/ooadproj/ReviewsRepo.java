@@ -0,0 +1,9 @@
+package com.cs353.ooadproj;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface ReviewsRepo extends MongoRepository<Review, String> {
+    Slice<Review> findByProductId(String productId, Pageable pageable);
+}
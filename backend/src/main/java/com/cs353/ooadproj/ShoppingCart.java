@@ -2,6 +2,7 @@ package com.cs353.ooadproj;
 
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.web.bind.annotation.PathVariable;
 
@@ -17,6 +18,8 @@ public class ShoppingCart {
     @Id
     @GeneratedValue()
     private String id;
+    // One cart per user, so concurrent upserts cannot create a second one
+    @Indexed(unique = true)
     private String userId;
     private List<LineItem> lineItems;
     private double totalCost;
@@ -1,8 +1,6 @@
 package com.cs353.ooadproj;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 
 import lombok.extern.slf4j.Slf4j;
 import org.bson.types.ObjectId;
@@ -15,84 +13,48 @@ import org.slf4j.LoggerFactory;
 @Slf4j
 @RestController
 public class ShoppingCartController {
-    private final ShoppingCartRepo shoppingCartRepo;
+    private final CartStore cartStore;
     private final UsersRepo usersRepo;
-    private final ProductsRepository productsRepository;
-    ShoppingCartController(ShoppingCartRepo shoppingCartRepo, UsersRepo usersRepo, ProductsRepository productsRepository) {
-        this.shoppingCartRepo = shoppingCartRepo;
+    private final ProductRepositoryProxy productRepo;
+    ShoppingCartController(CartStore cartStore, UsersRepo usersRepo, ProductRepositoryProxy productRepo) {
+        this.cartStore = cartStore;
         this.usersRepo = usersRepo;
-        this.productsRepository = productsRepository;
+        this.productRepo = productRepo;
     }
 
     @CrossOrigin()
     @GetMapping("/cart/{id}")
     public ShoppingCart all(@PathVariable String id) {
         log.info("Getting cart #{}", id);
-        ShoppingCart shoppingCartOptional = shoppingCartRepo.findByUserId(id);
-        if(shoppingCartOptional!=null) {
-            return shoppingCartOptional;
-        }
-        else {
-            ShoppingCart shoppingCart = new ShoppingCart();
-            List<LineItem> lineItems = new ArrayList<>();
-            shoppingCart.setUserId(id);
-            shoppingCart.setLineItems(lineItems);
-            shoppingCart.setTotalCost(0.0);
-            shoppingCartRepo.save(shoppingCart);
-            return shoppingCart;
-        }
+        return cartStore.findOrCreate(id);
     }
 
     @CrossOrigin()
     @PostMapping("/cart")
     public ShoppingCart addLineItem(@RequestBody NewLineItemReq newLineItemReq) {
-        log.info("Adding line item");
-        ShoppingCart shoppingCart = shoppingCartRepo.findByUserId(newLineItemReq.getUserId());
-        log.info(String.valueOf(shoppingCart));
-        if(shoppingCart!=null) {
-            log.info("Getting shopping cart for user #{}",newLineItemReq.getUserId());
-            List<LineItem> lineItems = shoppingCart.getLineItems();
-            lineItems.add(newLineItemReq.getLineItem());
-            double newCost = newLineItemReq.getLineItem().getQuantity()*newLineItemReq.getLineItem().getProduct().getPrice();
-            double totalCost = shoppingCart.getTotalCost();
-            totalCost+=newCost;
-            shoppingCart.setTotalCost(totalCost);
-            shoppingCart.setLineItems(lineItems);
-            shoppingCartRepo.save(shoppingCart);
-            return shoppingCart;
-        }
-        else {
-            log.info("Shopping cart doesn't exist for user #{}, creating a new one...",newLineItemReq.getUserId());
-            ShoppingCart newShoppingCart = new ShoppingCart();
-            newShoppingCart.setUserId(newLineItemReq.getUserId());
-            List<LineItem> lineItems = new ArrayList<>();
-            lineItems.add(newLineItemReq.getLineItem());
-            double totalCost = newLineItemReq.getLineItem().getQuantity()*newLineItemReq.getLineItem().getProduct().getPrice();
-            newShoppingCart.setTotalCost(totalCost);
-            newShoppingCart.setLineItems(lineItems);
-            shoppingCartRepo.save(newShoppingCart);
-            return newShoppingCart;
+        log.info("Adding line item to cart of user #{}", newLineItemReq.getUserId());
+        LineItem requested = newLineItemReq.getLineItem();
+        String productId = requested.getProductId() != null ? requested.getProductId()
+            : requested.getProduct() != null ? requested.getProduct().getId() : null;
+        if (productId == null) {
+            throw new IllegalArgumentException("Line item must reference a product!");
         }
+        // Title and price come from the catalog, not from whatever the client sent
+        Product product = productRepo.findById(productId)
+            .orElseThrow(() -> new IllegalArgumentException("Product not found!"));
+        LineItem lineItem = LineItem.of(product, requested.getQuantity());
+        return cartStore.addLineItems(newLineItemReq.getUserId(), List.of(lineItem));
     }
 
     @CrossOrigin()
     @DeleteMapping("/cart/{id}")
     public ShoppingCart deleteLineItem(@RequestParam String userId, @PathVariable String id) {
         log.info("Deleting line item #{}",id);
-        ShoppingCart shoppingCart = shoppingCartRepo.findByUserId(userId);
-        List<LineItem> lineItems = shoppingCart.getLineItems();
-        List<LineItem> temp = new ArrayList<>();
-        double totalCost = shoppingCart.getTotalCost();
-        for (LineItem lineItem:lineItems) {
-            if (lineItem.getTrueId().equals(id)) {
-                totalCost-= lineItem.getQuantity()*lineItem.getProduct().getPrice();
-            }
+        ShoppingCart shoppingCart = cartStore.removeLineItems(userId, List.of(id));
+        if (shoppingCart == null) {
+            throw new IllegalArgumentException("Cart not found!");
         }
-        shoppingCart.setTotalCost(totalCost);
-        lineItems.removeIf(lineItem -> lineItem.getTrueId().equals(id));
         log.info("Removed item #{} from cart",id);
-        shoppingCart.setLineItems(lineItems);
-        shoppingCartRepo.save(shoppingCart);
         return shoppingCart;
     }
 
@@ -7,7 +7,7 @@ import java.util.List;
 import java.util.Optional;
 
 
-interface ShoppingCartRepo extends MongoRepository<ShoppingCart, String> {
+interface ShoppingCartRepo extends MongoRepository<ShoppingCart, String>, ShoppingCartRepoCustom {
     ShoppingCart findByUserId(String userId);
 
 }
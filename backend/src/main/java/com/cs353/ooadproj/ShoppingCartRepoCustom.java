@@ -0,0 +1,33 @@
+package com.cs353.ooadproj;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Atomic cart updates, so concurrent requests on the same cart cannot overwrite each other
+ */
+interface ShoppingCartRepoCustom {
+
+    /**
+     * The user's cart, created empty in the same round trip if it does not exist yet
+     */
+    ShoppingCart findOrCreateByUserId(String userId);
+
+    /**
+     * Atomically append line items and add their cost to the total, creating the cart if needed.
+     * Returns the updated cart.
+     */
+    ShoppingCart addLineItems(String userId, List<LineItem> lineItems);
+
+    /**
+     * Overwrite the items and totals of the given carts in one bulk write, creating any
+     * that do not exist yet with the cart's id. Used to persist carts kept in memory.
+     */
+    void saveCartStates(Collection<ShoppingCart> carts);
+
+    /**
+     * Atomically remove the line items with the given ids and subtract their cost from the total.
+     * Returns the updated cart, the unchanged cart if it held none of them, or null if there is no cart.
+     */
+    ShoppingCart removeLineItems(String userId, Collection<String> lineItemIds);
+}
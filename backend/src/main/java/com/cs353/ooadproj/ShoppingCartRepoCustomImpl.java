@@ -0,0 +1,104 @@
+package com.cs353.ooadproj;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * MongoTemplate-backed implementation of the atomic cart updates
+ * Every operation is a single findAndModify, so it is one round trip and is
+ * applied by the server against the current document, not a copy read earlier.
+ */
+class ShoppingCartRepoCustomImpl implements ShoppingCartRepoCustom {
+    private final MongoTemplate mongoTemplate;
+
+    ShoppingCartRepoCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public ShoppingCart findOrCreateByUserId(String userId) {
+        Update update = new Update()
+            .setOnInsert("lineItems", new ArrayList<>())
+            .setOnInsert("totalCost", 0.0);
+        return upsert(userId, update);
+    }
+
+    @Override
+    public ShoppingCart addLineItems(String userId, List<LineItem> lineItems) {
+        double cost = 0;
+        for (LineItem lineItem : lineItems) {
+            cost += lineItem.cost();
+        }
+        Update update = new Update().inc("totalCost", cost);
+        update.push("lineItems").each(lineItems.toArray());
+        return upsert(userId, update);
+    }
+
+    @Override
+    public void saveCartStates(Collection<ShoppingCart> carts) {
+        if (carts.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ShoppingCart.class);
+        for (ShoppingCart cart : carts) {
+            Update update = new Update()
+                .set("lineItems", cart.getLineItems())
+                .set("totalCost", cart.getTotalCost())
+                .setOnInsert("_id", ObjectId.isValid(cart.getId()) ? new ObjectId(cart.getId()) : cart.getId());
+            bulk.upsert(Query.query(Criteria.where("userId").is(cart.getUserId())), update);
+        }
+        bulk.execute();
+    }
+
+    @Override
+    public ShoppingCart removeLineItems(String userId, Collection<String> lineItemIds) {
+        List<String> ids = new ArrayList<>(lineItemIds);
+        // The removed cost is computed by the server from the items it actually removes,
+        // so two concurrent removals of the same item cannot subtract it twice
+        Document removedItems = new Document("$filter", new Document("input", "$lineItems")
+            .append("cond", new Document("$in", List.of("$$this.trueId", ids))));
+        Document removedCost = new Document("$sum", new Document("$map", new Document("input", removedItems)
+            .append("in", new Document("$multiply", List.of("$$this.quantity", "$$this.unitPrice")))));
+        Document keptItems = new Document("$filter", new Document("input", "$lineItems")
+            .append("cond", new Document("$not", List.of(new Document("$in", List.of("$$this.trueId", ids))))));
+        AggregationOperation set = context -> new Document("$set", new Document()
+            .append("totalCost", new Document("$subtract", List.of("$totalCost", removedCost)))
+            .append("lineItems", keptItems));
+
+        ShoppingCart updated = mongoTemplate.findAndModify(
+            Query.query(Criteria.where("userId").is(userId).and("lineItems.trueId").in(ids)),
+            AggregationUpdate.from(List.of(set)),
+            FindAndModifyOptions.options().returnNew(true),
+            ShoppingCart.class);
+        if (updated != null) {
+            return updated;
+        }
+        return mongoTemplate.findOne(Query.query(Criteria.where("userId").is(userId)), ShoppingCart.class);
+    }
+
+    private ShoppingCart upsert(String userId, UpdateDefinition update) {
+        Query query = Query.query(Criteria.where("userId").is(userId));
+        FindAndModifyOptions options = FindAndModifyOptions.options().upsert(true).returnNew(true);
+        try {
+            return mongoTemplate.findAndModify(query, update, options, ShoppingCart.class);
+        } catch (DuplicateKeyException e) {
+            // Two upserts raced to create the cart; the unique index let one win, so this one now updates it
+            return mongoTemplate.findAndModify(query, update, options, ShoppingCart.class);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.cs353.ooadproj;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Character-trigram index over a vocabulary of terms, for finding the terms
+ * within a small edit distance of a misspelled one
+ *
+ * Candidates are the terms sharing enough trigrams with the query, counted over
+ * primitive int posting arrays; only those are checked with a bounded
+ * Levenshtein distance. Not thread-safe for writes: the owner guards it with
+ * its own lock. Lookups may run concurrently and use per-thread scratch buffers.
+ */
+final class TermTrigramIndex {
+    private static final char BOUNDARY = '\u0000';
+
+    // trigram packed into a long -> ordinals of the terms containing it
+    private final Map<Long, IntList> postings = new HashMap<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<String> termsByOrdinal = new ArrayList<>();
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * A growable int array, so postings do not box every ordinal
+     */
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void remove(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    // Order does not matter, so fill the hole with the last entry
+                    values[i] = values[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Buffers reused across lookups on the same thread
+     */
+    private static final class Scratch {
+        int[] counts = new int[0];
+        int[] touched = new int[0];
+        int[] previousRow = new int[32];
+        int[] currentRow = new int[32];
+        long[] trigrams = new long[32];
+    }
+
+    /**
+     * A term found within the allowed edit distance
+     */
+    static final class Match {
+        final String term;
+        final int distance;
+
+        Match(String term, int distance) {
+            this.term = term;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * Edits tolerated for a term of the given length; short terms must match exactly
+     */
+    static int maxEdits(int length) {
+        if (length < 3) {
+            return 0;
+        }
+        return length < 6 ? 1 : 2;
+    }
+
+    int size() {
+        return ordinals.size();
+    }
+
+    void add(String term) {
+        if (ordinals.containsKey(term)) {
+            return;
+        }
+
+        int ordinal;
+        if (freeOrdinals.isEmpty()) {
+            ordinal = termsByOrdinal.size();
+            termsByOrdinal.add(term);
+        } else {
+            ordinal = freeOrdinals.pop();
+            termsByOrdinal.set(ordinal, term);
+        }
+        ordinals.put(term, ordinal);
+
+        long[] trigrams = new long[trigramCount(term)];
+        int count = trigrams(term, trigrams);
+        for (int i = 0; i < count; i++) {
+            postings.computeIfAbsent(trigrams[i], t -> new IntList()).add(ordinal);
+        }
+    }
+
+    void remove(String term) {
+        Integer ordinal = ordinals.remove(term);
+        if (ordinal == null) {
+            return;
+        }
+        termsByOrdinal.set(ordinal, null);
+        freeOrdinals.push(ordinal);
+
+        long[] trigrams = new long[trigramCount(term)];
+        int count = trigrams(term, trigrams);
+        for (int i = 0; i < count; i++) {
+            IntList posting = postings.get(trigrams[i]);
+            if (posting != null) {
+                posting.remove(ordinal);
+                if (posting.size == 0) {
+                    postings.remove(trigrams[i]);
+                }
+            }
+        }
+    }
+
+    void clear() {
+        postings.clear();
+        ordinals.clear();
+        termsByOrdinal.clear();
+        freeOrdinals.clear();
+    }
+
+    /**
+     * Indexed terms within maxEdits(term.length()) edits of the given term, excluding the term itself
+     */
+    List<Match> similarTerms(String term) {
+        List<Match> matches = new ArrayList<>();
+        int maxEdits = maxEdits(term.length());
+        if (maxEdits == 0) {
+            return matches;
+        }
+
+        Scratch scratch = SCRATCH.get();
+        if (scratch.counts.length < termsByOrdinal.size()) {
+            scratch.counts = new int[termsByOrdinal.size() * 2];
+            scratch.touched = new int[termsByOrdinal.size() * 2];
+        }
+        int gramCount = trigramCount(term);
+        if (scratch.trigrams.length < gramCount) {
+            scratch.trigrams = new long[gramCount * 2];
+        }
+        int distinct = trigrams(term, scratch.trigrams);
+
+        int[] counts = scratch.counts;
+        int[] touched = scratch.touched;
+        int touchedCount = 0;
+        for (int i = 0; i < distinct; i++) {
+            IntList posting = postings.get(scratch.trigrams[i]);
+            if (posting == null) {
+                continue;
+            }
+            int[] values = posting.values;
+            for (int j = 0; j < posting.size; j++) {
+                if (counts[values[j]]++ == 0) {
+                    touched[touchedCount++] = values[j];
+                }
+            }
+        }
+
+        // Each edit destroys at most three trigrams
+        int minShared = Math.max(1, distinct - 3 * maxEdits);
+        for (int i = 0; i < touchedCount; i++) {
+            int ordinal = touched[i];
+            int shared = counts[ordinal];
+            counts[ordinal] = 0;
+            if (shared < minShared) {
+                continue;
+            }
+            String candidate = termsByOrdinal.get(ordinal);
+            if (Math.abs(candidate.length() - term.length()) > maxEdits || candidate.equals(term)) {
+                continue;
+            }
+            int distance = boundedDistance(term, candidate, maxEdits, scratch);
+            if (distance <= maxEdits) {
+                matches.add(new Match(candidate, distance));
+            }
+        }
+        return matches;
+    }
+
+    private static int trigramCount(String term) {
+        // The term is padded with one boundary character on each side
+        return term.length();
+    }
+
+    /**
+     * Write the distinct trigrams of the padded term into out and return how many there are
+     */
+    private static int trigrams(String term, long[] out) {
+        int count = 0;
+        int length = term.length() + 2;
+        for (int i = 0; i + 3 <= length; i++) {
+            long trigram = ((long) padded(term, i) << 32) | ((long) padded(term, i + 1) << 16) | padded(term, i + 2);
+            boolean seen = false;
+            for (int j = 0; j < count && !seen; j++) {
+                seen = out[j] == trigram;
+            }
+            if (!seen) {
+                out[count++] = trigram;
+            }
+        }
+        return count;
+    }
+
+    private static char padded(String term, int i) {
+        return i == 0 || i > term.length() ? BOUNDARY : term.charAt(i - 1);
+    }
+
+    /**
+     * Levenshtein distance, or maxEdits + 1 as soon as it is known to exceed maxEdits
+     */
+    private static int boundedDistance(String a, String b, int maxEdits, Scratch scratch) {
+        int columns = b.length() + 1;
+        if (scratch.previousRow.length < columns) {
+            scratch.previousRow = new int[columns * 2];
+            scratch.currentRow = new int[columns * 2];
+        }
+        int[] previous = scratch.previousRow;
+        int[] current = scratch.currentRow;
+        for (int j = 0; j < columns; j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j < columns; j++) {
+                int cost = ca == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin > maxEdits) {
+                return maxEdits + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[columns - 1];
+    }
+}
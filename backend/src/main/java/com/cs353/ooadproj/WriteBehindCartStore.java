@@ -0,0 +1,304 @@
+package com.cs353.ooadproj;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Cart store that keeps active carts in memory and writes them back in batches
+ *
+ * Carts are sharded by userId, each shard with its own lock, so changes to
+ * different carts rarely contend. A change only updates the in-memory cart and
+ * bumps its version; every flush interval all carts changed since their last
+ * flush are written in one bulk write, so any number of changes to a cart
+ * between flushes cost a single write. The flush interval is the durability
+ * knob: at most that much of cart activity is lost if the process crashes.
+ * Checkout flushes the cart straight away.
+ *
+ * Meant for a single application instance, since other instances would not see
+ * the unflushed changes.
+ */
+@Component
+@ConditionalOnProperty(name = "cart.write-behind.enabled", havingValue = "true")
+@Slf4j
+public class WriteBehindCartStore implements CartStore {
+    private static final int SHARDS = 64;
+
+    private final ShoppingCartRepo shoppingCartRepo;
+    private final Shard[] shards = new Shard[SHARDS];
+    // Cart id -> user id, for carts held in memory
+    private final Map<String, String> userIdsByCartId = new ConcurrentHashMap<>();
+    // Flushes run one at a time so an older cart state can never overwrite a newer one
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher;
+    private final long idleMs;
+
+    private static final class Shard {
+        final ReentrantLock lock = new ReentrantLock();
+        final Map<String, CartEntry> carts = new HashMap<>();
+    }
+
+    private static final class CartEntry {
+        final ShoppingCart cart;
+        long version;
+        long flushedVersion;
+        long lastAccess;
+
+        CartEntry(ShoppingCart cart, boolean persisted) {
+            this.cart = cart;
+            this.version = persisted ? 0 : 1;
+        }
+
+        boolean isDirty() {
+            return version != flushedVersion;
+        }
+    }
+
+    private static final class PendingFlush {
+        final Shard shard;
+        final CartEntry entry;
+        final ShoppingCart state;
+        final long version;
+
+        PendingFlush(Shard shard, CartEntry entry) {
+            this.shard = shard;
+            this.entry = entry;
+            this.state = copyOf(entry.cart);
+            this.version = entry.version;
+        }
+    }
+
+    public WriteBehindCartStore(ShoppingCartRepo shoppingCartRepo,
+                                @Value("${cart.write-behind.flush-interval-ms:1000}") long flushIntervalMs,
+                                @Value("${cart.write-behind.idle-minutes:30}") long idleMinutes) {
+        this.shoppingCartRepo = shoppingCartRepo;
+        this.idleMs = TimeUnit.MINUTES.toMillis(idleMinutes);
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cart-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushAll, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Write-behind cart store enabled, flushing every {} ms", flushIntervalMs);
+    }
+
+    @Override
+    public ShoppingCart findOrCreate(String userId) {
+        return withCart(userId, false, WriteBehindCartStore::copyOf);
+    }
+
+    @Override
+    public ShoppingCart findById(String cartId) {
+        String userId = userIdsByCartId.get(cartId);
+        if (userId == null) {
+            ShoppingCart stored = shoppingCartRepo.findById(cartId).orElse(null);
+            if (stored == null) {
+                return null;
+            }
+            userId = stored.getUserId();
+        }
+        return withCart(userId, false, WriteBehindCartStore::copyOf);
+    }
+
+    @Override
+    public ShoppingCart addLineItems(String userId, List<LineItem> lineItems) {
+        double cost = 0;
+        for (LineItem lineItem : lineItems) {
+            cost += lineItem.cost();
+        }
+        double addedCost = cost;
+        return withCart(userId, true, cart -> {
+            cart.getLineItems().addAll(lineItems);
+            cart.setTotalCost(cart.getTotalCost() + addedCost);
+            return copyOf(cart);
+        });
+    }
+
+    @Override
+    public ShoppingCart removeLineItems(String userId, Collection<String> lineItemIds) {
+        return withCart(userId, true, cart -> {
+            double removedCost = 0;
+            Iterator<LineItem> lineItems = cart.getLineItems().iterator();
+            while (lineItems.hasNext()) {
+                LineItem lineItem = lineItems.next();
+                if (lineItemIds.contains(lineItem.getTrueId())) {
+                    removedCost += lineItem.cost();
+                    lineItems.remove();
+                }
+            }
+            cart.setTotalCost(cart.getTotalCost() - removedCost);
+            return copyOf(cart);
+        });
+    }
+
+    @Override
+    public void flush(String userId) {
+        Shard shard = shardOf(userId);
+        List<PendingFlush> pending = new ArrayList<>(1);
+        flushLock.lock();
+        try {
+            shard.lock.lock();
+            try {
+                CartEntry entry = shard.carts.get(userId);
+                if (entry != null && entry.isDirty()) {
+                    pending.add(new PendingFlush(shard, entry));
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+            write(pending);
+        } catch (RuntimeException e) {
+            // The cart stays dirty and is retried by the next scheduled flush
+            log.error("Flushing cart of user #{} failed: {}", userId, e.getMessage(), e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Write every cart changed since its last flush in one bulk write, and drop
+     * carts that are flushed and have not been used for a while
+     */
+    void flushAll() {
+        flushLock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            List<PendingFlush> pending = new ArrayList<>();
+            for (Shard shard : shards) {
+                shard.lock.lock();
+                try {
+                    Iterator<CartEntry> entries = shard.carts.values().iterator();
+                    while (entries.hasNext()) {
+                        CartEntry entry = entries.next();
+                        if (entry.isDirty()) {
+                            pending.add(new PendingFlush(shard, entry));
+                        } else if (now - entry.lastAccess > idleMs) {
+                            entries.remove();
+                            userIdsByCartId.remove(entry.cart.getId());
+                        }
+                    }
+                } finally {
+                    shard.lock.unlock();
+                }
+            }
+            write(pending);
+        } catch (RuntimeException e) {
+            // Carts stay dirty and are retried on the next flush
+            log.error("Flushing carts failed: {}", e.getMessage(), e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        flushAll();
+    }
+
+    private void write(List<PendingFlush> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<ShoppingCart> states = new ArrayList<>(pending.size());
+        for (PendingFlush flush : pending) {
+            states.add(flush.state);
+        }
+        shoppingCartRepo.saveCartStates(states);
+
+        for (PendingFlush flush : pending) {
+            flush.shard.lock.lock();
+            try {
+                // Changes made while writing keep the cart dirty for the next flush
+                flush.entry.flushedVersion = Math.max(flush.entry.flushedVersion, flush.version);
+            } finally {
+                flush.shard.lock.unlock();
+            }
+        }
+        log.debug("Flushed {} carts", pending.size());
+    }
+
+    /**
+     * Run an action on the user's in-memory cart under its shard lock, loading
+     * or creating the cart first if it is not held yet
+     */
+    private <R> R withCart(String userId, boolean mutates, Function<ShoppingCart, R> action) {
+        Shard shard = shardOf(userId);
+        CartEntry loaded = null;
+        while (true) {
+            shard.lock.lock();
+            try {
+                CartEntry entry = shard.carts.get(userId);
+                if (entry == null && loaded != null) {
+                    entry = loaded;
+                    shard.carts.put(userId, entry);
+                    userIdsByCartId.put(entry.cart.getId(), userId);
+                }
+                if (entry != null) {
+                    entry.lastAccess = System.currentTimeMillis();
+                    R result = action.apply(entry.cart);
+                    if (mutates) {
+                        entry.version++;
+                    }
+                    return result;
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+            // Read from the database outside the lock so other carts in the shard are not held up
+            loaded = load(userId);
+        }
+    }
+
+    private CartEntry load(String userId) {
+        ShoppingCart cart = shoppingCartRepo.findByUserId(userId);
+        if (cart != null) {
+            if (cart.getLineItems() == null) {
+                cart.setLineItems(new ArrayList<>());
+            }
+            return new CartEntry(cart, true);
+        }
+
+        // Created in memory and written with the next flush
+        ShoppingCart created = new ShoppingCart();
+        created.setId(new ObjectId().toHexString());
+        created.setUserId(userId);
+        created.setLineItems(new ArrayList<>());
+        created.setTotalCost(0.0);
+        return new CartEntry(created, false);
+    }
+
+    private Shard shardOf(String userId) {
+        return shards[Math.floorMod(userId.hashCode(), SHARDS)];
+    }
+
+    private static ShoppingCart copyOf(ShoppingCart cart) {
+        ShoppingCart copy = new ShoppingCart();
+        copy.setId(cart.getId());
+        copy.setUserId(cart.getUserId());
+        copy.setLineItems(new ArrayList<>(cart.getLineItems()));
+        copy.setTotalCost(cart.getTotalCost());
+        return copy;
+    }
+}
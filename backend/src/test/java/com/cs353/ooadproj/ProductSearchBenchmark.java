@@ -0,0 +1,115 @@
+package com.cs353.ooadproj;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Throughput of the search index against the full catalog scan it replaced,
+ * for exact and misspelled queries
+ *
+ * Run main() from the test classpath, e.g. from the IDE
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductSearchBenchmark {
+    private static final String[] WORDS = {
+        "running", "sneakers", "leather", "boots", "wireless", "headphones", "cotton", "shirt",
+        "kitchen", "blender", "organic", "coffee", "gaming", "keyboard", "mechanical", "backpack",
+        "waterproof", "jacket", "stainless", "bottle", "portable", "speaker", "vintage", "watch"
+    };
+
+    @Param({"1000", "10000"})
+    public int catalogSize;
+
+    private List<Product> catalog;
+    private ProductSearchIndex index;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        catalog = new ArrayList<>(catalogSize);
+        for (int i = 0; i < catalogSize; i++) {
+            Product product = new Product();
+            product.setId(Integer.toString(i));
+            product.setTitle(words(random, 3) + " " + i);
+            product.setDescription(words(random, 20));
+            catalog.add(product);
+        }
+        index = new ProductSearchIndex();
+        index.onCatalogLoaded(catalog);
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * The substring scan that searchProducts used to run on every request
+     */
+    private List<Product> scan(String query) {
+        String searchQuery = query.toLowerCase();
+        return catalog.stream()
+            .filter(product ->
+                (product.getTitle() != null && product.getTitle().toLowerCase().contains(searchQuery)) ||
+                (product.getDescription() != null && product.getDescription().toLowerCase().contains(searchQuery)))
+            .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Product> scanExact() {
+        return scan("sneakers");
+    }
+
+    @Benchmark
+    public List<Product> scanTypo() {
+        // Finds nothing, but still pays for the whole scan
+        return scan("snekers");
+    }
+
+    @Benchmark
+    public List<Product> indexExact() {
+        return index.search("sneakers");
+    }
+
+    @Benchmark
+    public List<Product> indexTypo() {
+        return index.search("snekers");
+    }
+
+    @Benchmark
+    public List<Product> indexTypoTwoTerms() {
+        return index.search("leathr boots");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(ProductSearchBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
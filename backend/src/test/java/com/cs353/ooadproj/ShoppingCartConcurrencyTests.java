@@ -0,0 +1,129 @@
+package com.cs353.ooadproj;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Hammers one cart from many threads and checks that no update is lost
+ */
+@SpringBootTest
+class ShoppingCartConcurrencyTests {
+    private static final int THREADS = 16;
+    private static final int ITEMS_PER_THREAD = 25;
+    private static final double PRICE = 2.5;
+
+    @Autowired
+    private ShoppingCartRepo shoppingCartRepo;
+
+    private final String userId = "stress-" + UUID.randomUUID();
+
+    @AfterEach
+    void removeCart() {
+        ShoppingCart cart = shoppingCartRepo.findByUserId(userId);
+        if (cart != null) {
+            shoppingCartRepo.delete(cart);
+        }
+    }
+
+    @Test
+    void concurrentAddsAndRemovesLoseNothing() throws Exception {
+        List<List<LineItem>> itemsByThread = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            List<LineItem> items = new ArrayList<>();
+            for (int i = 0; i < ITEMS_PER_THREAD; i++) {
+                items.add(lineItem(1 + i % 3));
+            }
+            itemsByThread.add(items);
+        }
+
+        // Every thread races to create the cart and then keeps adding to it
+        runConcurrently(t -> {
+            for (LineItem item : itemsByThread.get(t)) {
+                shoppingCartRepo.addLineItems(userId, List.of(item));
+            }
+        });
+
+        ShoppingCart cart = shoppingCartRepo.findByUserId(userId);
+        double expectedTotal = 0;
+        for (List<LineItem> items : itemsByThread) {
+            for (LineItem item : items) {
+                expectedTotal += item.getQuantity() * PRICE;
+            }
+        }
+        assertEquals(THREADS * ITEMS_PER_THREAD, cart.getLineItems().size());
+        assertEquals(expectedTotal, cart.getTotalCost(), 1e-6);
+
+        // Each thread removes its odd items, and every item is also removed by a second thread
+        runConcurrently(t -> {
+            List<LineItem> own = itemsByThread.get(t);
+            List<LineItem> neighbour = itemsByThread.get((t + 1) % THREADS);
+            for (int i = 1; i < ITEMS_PER_THREAD; i += 2) {
+                shoppingCartRepo.removeLineItems(userId, List.of(own.get(i).getTrueId()));
+                shoppingCartRepo.removeLineItems(userId, List.of(neighbour.get(i).getTrueId()));
+            }
+        });
+
+        cart = shoppingCartRepo.findByUserId(userId);
+        double remainingTotal = 0;
+        int remainingItems = 0;
+        for (List<LineItem> items : itemsByThread) {
+            for (int i = 0; i < ITEMS_PER_THREAD; i += 2) {
+                remainingTotal += items.get(i).getQuantity() * PRICE;
+                remainingItems++;
+            }
+        }
+        assertEquals(remainingItems, cart.getLineItems().size());
+        assertEquals(remainingTotal, cart.getTotalCost(), 1e-6);
+        assertTrue(cart.getLineItems().stream().noneMatch(item -> item.getQuantity() == 0));
+    }
+
+    private interface ThreadBody {
+        void run(int thread) throws Exception;
+    }
+
+    private static void runConcurrently(ThreadBody body) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                Callable<Void> task = () -> {
+                    start.await();
+                    body.run(thread);
+                    return null;
+                };
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static LineItem lineItem(int quantity) {
+        Product product = new Product();
+        product.setId("stress-product");
+        product.setTitle("Stress test product");
+        product.setPrice(PRICE);
+        return LineItem.of(product, quantity);
+    }
+}
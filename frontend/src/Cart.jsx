@@ -134,11 +134,11 @@ export default function Cart({ open, setOpen }) {
                         <div className="flow-root">
                           <ul className="-my-6 divide-y divide-gray-200">
                             {lineItems.map(
-                              ({ product, quantity, trueId: id }) => (
+                              ({ productId, title, unitPrice, thumbnail, quantity, trueId: id }) => (
                                 <li key={id} className="flex py-6">
                                   <div className="h-24 w-24 flex-shrink-0 overflow-hidden rounded-md border border-gray-200 elegant-card">
                                     <img
-                                      src={product.images[0]}
+                                      src={thumbnail}
                                       alt="product"
                                       className="h-full w-full object-cover object-center"
                                     />
@@ -148,17 +148,14 @@ export default function Cart({ open, setOpen }) {
                                     <div>
                                       <div className="flex justify-between text-base font-medium text-gray-900">
                                         <h3>
-                                          <a href={`product/${product.id}`} className="hover:text-accent-color transition duration-300">
-                                            {product.title}
+                                          <a href={`product/${productId}`} className="hover:text-accent-color transition duration-300">
+                                            {title}
                                           </a>
                                         </h3>
                                         <p className="ml-4 font-bold">
-                                          {getPriceString(product.price)}
+                                          {getPriceString(unitPrice)}
                                         </p>
                                       </div>
-                                      <p className="mt-1 text-sm text-gray-500">
-                                        {product.color}
-                                      </p>
                                     </div>
                                     <div className="flex flex-1 items-end justify-between text-sm">
                                       <p className="text-gray-500">
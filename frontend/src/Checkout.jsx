@@ -1,9 +1,9 @@
-import { useState, useEffect } from "react";
+import { useState, useEffect, useRef } from "react";
 import TextField from "./TextField";
 import { getPriceString } from "./util/getPriceString";
 import { useNavigate } from "react-router-dom";
 import { toast } from "react-toastify";
-import apiAdapter from "./services/ApiAdapter";
+import apiAdapter, { newIdempotencyKey } from "./services/ApiAdapter";
 
 export default function Checkout() {
   const [address, setAddress] = useState("");
@@ -11,6 +11,8 @@ export default function Checkout() {
   const [cartId, setCartId] = useState();
   const [isSubmitting, setIsSubmitting] = useState(false);
   const [cartItems, setCartItems] = useState([]);
+  // One key per checkout, so pressing the button again after a timeout cannot order twice
+  const idempotencyKey = useRef(newIdempotencyKey());
 
   const navigate = useNavigate();
 
@@ -57,7 +59,8 @@ export default function Checkout() {
       const data = await apiAdapter.placeOrder(
         cartId,
         address,
-        date.toISOString()
+        date.toISOString(),
+        idempotencyKey.current
       );
       
       if (data && data.id) {
@@ -1,4 +1,4 @@
-import { Fragment, useState } from "react";
+import { Fragment, useEffect, useState } from "react";
 import { Dialog, Popover, Tab, Transition } from "@headlessui/react";
 import { MenuIcon, ShoppingBagIcon, XIcon, SearchIcon } from "@heroicons/react/outline";
 import { Link, useNavigate } from "react-router-dom";
@@ -8,6 +8,7 @@ import "react-toastify/dist/ReactToastify.css";
 import Cart from "./Cart";
 import LoginModal from "./LoginModal";
 import RegisterModal from "./RegisterModal";
+import apiAdapter from "./services/ApiAdapter";
 
 const navigation = {
   categories: [],
@@ -27,8 +28,24 @@ export default function NavBar({ children }) {
   const [registerModalOpen, setRegisterModalOpen] = useState(false);
   const [cartOpen, setCartOpen] = useState(false);
   const [searchQuery, setSearchQuery] = useState("");
+  const [suggestions, setSuggestions] = useState([]);
   const navigate = useNavigate();
 
+  // Fetch completions once typing pauses instead of on every keystroke
+  useEffect(() => {
+    const prefix = searchQuery.trim();
+    if (!prefix) {
+      setSuggestions([]);
+      return;
+    }
+    const timer = setTimeout(() => {
+      apiAdapter.suggestProducts(prefix)
+        .then((data) => setSuggestions(data || []))
+        .catch(() => setSuggestions([]));
+    }, 150);
+    return () => clearTimeout(timer);
+  }, [searchQuery]);
+
   let user = localStorage.getItem("minimalUser");
   if (user) user = JSON.parse(user);
 
@@ -292,7 +309,13 @@ export default function NavBar({ children }) {
                       placeholder="Search products..."
                       value={searchQuery}
                       onChange={(e) => setSearchQuery(e.target.value)}
+                      list="product-suggestions"
                     />
+                    <datalist id="product-suggestions">
+                      {suggestions.map((suggestion) => (
+                        <option key={suggestion} value={suggestion} />
+                      ))}
+                    </datalist>
                     <div className="absolute inset-y-0 left-0 flex items-center pl-3">
                       <SearchIcon className="h-5 w-5 text-gray-400" aria-hidden="true" />
                     </div>
@@ -7,6 +7,8 @@ import { getPriceString } from "./util/getPriceString";
 export default function OrdersPage() {
   const [orders, setOrders] = useState([]);
   const [loading, setLoading] = useState(true);
+  const [nextCursor, setNextCursor] = useState(null);
+  const [loadingMore, setLoadingMore] = useState(false);
 
   // Get user from localStorage
   const user = JSON.parse(localStorage.getItem("minimalUser") || "{}");
@@ -20,8 +22,9 @@ export default function OrdersPage() {
       }
 
       try {
-        const data = await apiAdapter.getUserOrders(user.id);
-        setOrders(Array.isArray(data) ? data : []);
+        const page = await apiAdapter.getUserOrderHistory(user.id);
+        setOrders(page.items || []);
+        setNextCursor(page.nextCursor);
       } catch (error) {
         console.error("Error fetching orders:", error);
         toast.error("Could not load order history");
@@ -33,6 +36,20 @@ export default function OrdersPage() {
     fetchOrders();
   }, []);
 
+  const loadMore = async () => {
+    setLoadingMore(true);
+    try {
+      const page = await apiAdapter.getUserOrderHistory(user.id, { cursor: nextCursor });
+      setOrders((previous) => [...previous, ...(page.items || [])]);
+      setNextCursor(page.nextCursor);
+    } catch (error) {
+      console.error("Error fetching orders:", error);
+      toast.error("Could not load more orders");
+    } finally {
+      setLoadingMore(false);
+    }
+  };
+
   const formatDate = (dateString) => {
     if (!dateString) return "Not available";
     
@@ -106,6 +123,17 @@ export default function OrdersPage() {
               </div>
             </div>
           ))}
+          {nextCursor && (
+            <div className="text-center">
+              <button
+                onClick={loadMore}
+                disabled={loadingMore}
+                className="elegant-button-secondary"
+              >
+                {loadingMore ? "Loading..." : "Load more orders"}
+              </button>
+            </div>
+          )}
         </div>
       )}
     </div>
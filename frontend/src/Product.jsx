@@ -26,6 +26,14 @@ export default function Product() {
   if (user) user = JSON.parse(user);
 
   const calculateReviewStats = (product) => {
+    // Only the newest reviews are embedded, so prefer the server-side summary
+    if (product && product.ratingSummary) {
+      return {
+        average: product.ratingSummary.average,
+        totalCount: product.ratingSummary.count,
+      };
+    }
+
     if (!product || !product.reviews || product.reviews.length === 0) {
       return { average: 0, totalCount: 0 };
     }
@@ -49,7 +57,7 @@ export default function Product() {
   const addToCart = async () => {
     try {
       await apiAdapter.addToCart(user.id, {
-        product,
+        productId: product.id,
         quantity: 1,
       });
       toast.success("Product added to cart");
@@ -1,5 +1,12 @@
 import axios from 'axios';
 
+export function newIdempotencyKey() {
+  if (window.crypto && window.crypto.randomUUID) {
+    return window.crypto.randomUUID();
+  }
+  return `${Date.now().toString(36)}-${Math.random().toString(36).slice(2)}`;
+}
+
 // The ApiAdapter class serves as an adapter between your React components and the backend API
 class ApiAdapter {
   constructor(baseURL = 'http://localhost:8080') {
@@ -119,6 +126,16 @@ class ApiAdapter {
     }
   }
 
+  async suggestProducts(prefix) {
+    try {
+      const { data } = await this.client.get(`/products/suggest?prefix=${encodeURIComponent(prefix)}`);
+      return data;
+    } catch (error) {
+      console.error("Error getting product suggestions:", error);
+      throw error;
+    }
+  }
+
   async getProductsByCategory(category) {
     try {
       const { data } = await this.client.get(`/products/category/${encodeURIComponent(category)}`);
@@ -188,15 +205,21 @@ class ApiAdapter {
   }
 
   // Order-related methods
-  async placeOrder(cartId, address, deliveryDate) {
+  // Retries reuse the same Idempotency-Key, so a request that timed out is never placed twice
+  async placeOrder(cartId, address, deliveryDate, idempotencyKey = newIdempotencyKey()) {
     try {
-      const response = await axios.post(
+      const response = await this.postWithRetry(
         `${this.baseURL}/orders/${cartId}`,
         {
           address,
           deliveryDate
-        }
+        },
+        { headers: { "Idempotency-Key": idempotencyKey } }
       );
+      // 202 means the order was queued; poll until it has been placed
+      if (response.status === 202) {
+        return await this.waitForOrder(response.data.requestId);
+      }
       return response.data;
     } catch (error) {
       console.error("Error placing order:", error);
@@ -204,6 +227,33 @@ class ApiAdapter {
     }
   }
 
+  async postWithRetry(url, body, config, attempts = 3) {
+    for (let attempt = 1; ; attempt++) {
+      try {
+        return await axios.post(url, body, config);
+      } catch (error) {
+        // Only retry when no response arrived; an error response is final
+        if (error.response || attempt >= attempts) {
+          throw error;
+        }
+        await new Promise((resolve) => setTimeout(resolve, 500 * attempt));
+      }
+    }
+  }
+
+  async waitForOrder(requestId) {
+    for (;;) {
+      await new Promise((resolve) => setTimeout(resolve, 500));
+      const { data } = await this.client.get(`/orders/requests/${requestId}`);
+      if (data.state === "COMPLETED") {
+        return { id: data.orderId };
+      }
+      if (data.state === "FAILED") {
+        throw new Error(data.error || "Order placement failed");
+      }
+    }
+  }
+
   async getUserOrders(userId) {
     try {
       const { data } = await this.client.get(`/orders/${userId}`);
@@ -213,6 +263,17 @@ class ApiAdapter {
     }
   }
 
+  async getUserOrderHistory(userId, { cursor, limit = 10, from, to } = {}) {
+    try {
+      const { data } = await this.client.get(`/orders/${userId}/history`, {
+        params: { cursor, limit, from, to }
+      });
+      return data;
+    } catch (error) {
+      throw error;
+    }
+  }
+
   async getOrderById(orderId) {
     try {
       const response = await axios.get(`${this.baseURL}/orders/details/${orderId}`);